@@ -6,6 +6,7 @@ import java.nio.file.Files;
 import java.nio.file.InvalidPathException;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.IllegalFormatException;
 import java.util.Properties;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -36,6 +37,11 @@ public class Config {
      */
     public final int deckSize;
 
+    /**
+     * The file in which the catalog of all the legal sets in the deck is kept (empty to keep it in memory only)
+     */
+    public final String setCatalogFile;
+
     /**
      * The number of human players in the game.
      */
@@ -56,6 +62,30 @@ public class Config {
      */
     public final boolean hints;
 
+    /**
+     * What to do with a key press of a human player while the player's input queue is full.
+     */
+    public enum KeyOverflowPolicy {
+        /**
+         * The new key press is dropped.
+         */
+        DROP_NEWEST,
+        /**
+         * The oldest key press in the queue is dropped to make room for the new one.
+         */
+        DROP_OLDEST,
+        /**
+         * A key press for a slot that is already waiting in the queue cancels the waiting one (two presses of the same
+         * slot toggle the token back), even when the queue is not full. Any other key press is dropped if it is full.
+         */
+        TOGGLE_CANCEL
+    }
+
+    /**
+     * What to do with a key press of a human player while the player's input queue is full
+     */
+    public final KeyOverflowPolicy keyOverflowPolicy;
+
     /**
      * The number of milliseconds until the dealer reshuffles the deck (0 show timer since last action, -1 show nothing)
      */
@@ -81,6 +111,44 @@ public class Config {
      */
     public final long tableDelayMillis;
 
+    /**
+     * The number of milliseconds a computer player waits from the moment it can act until it presses a key
+     */
+    public final long computerReactionMillis;
+
+    /**
+     * The probability (between 0 and 1) that a computer player goes for one of the legal sets on the table, whenever
+     * the table changes, instead of pressing random keys (0 also keeps the dealer from analyzing the table)
+     */
+    public final double computerSkill;
+
+    /**
+     * True iff each computer player runs its AI on its own player thread, instead of on an additional thread that sends
+     * the key presses to the player thread through its actions queue
+     */
+    public final boolean fusedComputerPlayers;
+
+    /**
+     * True iff the dealer, player and computer threads should be virtual threads (needs Java 21 or above)
+     */
+    public final boolean virtualThreads;
+
+    /**
+     * True iff the game runs on a virtual clock, that skips the time all the game threads wait (see VirtualClock)
+     */
+    public final boolean virtualClock;
+
+    /**
+     * The seed of the shuffles of the dealer (0 for a different seed in every game)
+     */
+    public final long randomSeed;
+
+    /**
+     * The file of the binary journal of the game (empty for none, a %d in it is replaced by the seed of the game; a game
+     * whose file is still written by another game of the same process gets it with -2, -3, ... before its extension)
+     */
+    public final String journalFile;
+
     /**
      * The number of milliseconds to pause at the end of the game before closing
      */
@@ -155,7 +223,7 @@ public class Config {
      * @param filename - the name of the configuration file.
      * @return - a properties object with the configuration file contents.
      */
-    private static Properties loadProperties(String filename, Logger logger) {
+    static Properties loadProperties(String filename, Logger logger) {
 
         Properties properties = new Properties();
 
@@ -197,6 +265,7 @@ public class Config {
         featureSize = Integer.parseInt(properties.getProperty("FeatureSize", "3"));
         featureCount = Integer.parseInt(properties.getProperty("FeatureCount", "4"));
         deckSize = (int) Math.pow(featureSize, featureCount);
+        setCatalogFile = properties.getProperty("SetCatalogFile", "").trim();
 
         // gameplay settings
         humanPlayers = Integer.parseInt(properties.getProperty("HumanPlayers", "2"));
@@ -204,11 +273,19 @@ public class Config {
         players = humanPlayers + computerPlayers;
 
         hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
+        keyOverflowPolicy = KeyOverflowPolicy.valueOf(properties.getProperty("KeyOverflowPolicy", "DROP_NEWEST").trim().toUpperCase());
         turnTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "60")) * 1000.0);
         turnTimeoutWarningMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutWarningSeconds", "60")) * 1000.0);
         pointFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PointFreezeSeconds", "1")) * 1000.0);
         penaltyFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PenaltyFreezeSeconds", "3")) * 1000.0);
         tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
+        virtualThreads = Boolean.parseBoolean(properties.getProperty("VirtualThreads", "False"));
+        virtualClock = Boolean.parseBoolean(properties.getProperty("VirtualClock", "False"));
+        randomSeed = Long.parseLong(properties.getProperty("RandomSeed", "0").trim());
+        journalFile = journalFile(properties.getProperty("JournalFile", "").trim(), logger);
+        computerSkill = Double.parseDouble(properties.getProperty("ComputerSkill", "0"));
+        fusedComputerPlayers = Boolean.parseBoolean(properties.getProperty("FusedComputerPlayers", "False"));
+        computerReactionMillis = (long) (Double.parseDouble(properties.getProperty("ComputerReactionSeconds", "0")) * 1000.0);
         endGamePauseMillies = (long) (Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) * 1000.0);
 
         // ui settings
@@ -244,4 +321,19 @@ public class Config {
     public int[] playerKeys(int player) {
         return playerKeys[player];
     }
+
+    /**
+     * Checks the journal file (its seed is formatted in with String.format, see GameJournal.open).
+     *
+     * @return - the journal file, or an empty string (no journal) if it is not a valid format for the seed.
+     */
+    private static String journalFile(String file, Logger logger) {
+        try {
+            String.format(file, 0L);
+            return file;
+        } catch (IllegalFormatException e) {
+            logger.severe("warning: journal file " + file + " is not a valid format (" + e + "), use %% for a %. No journal is kept.");
+            return "";
+        }
+    }
 }
@@ -1,5 +1,7 @@
 package bguspl.set;
 
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Logger;
 
 public class Env {
@@ -9,10 +11,50 @@ public class Env {
     public final UserInterface ui;
     public final Util util;
 
+    /**
+     * The catalog of all the legal sets in the deck (null if the dealer should build its own).
+     */
+    public final SetCatalog catalog;
+
+    /**
+     * The clock of the game (a virtual clock if config.virtualClock is set).
+     */
+    public final GameClock clock;
+
+    /**
+     * The factory of the dealer and player threads (virtual threads if config.virtualThreads is set and supported).
+     * The threads it creates are the participants of the clock.
+     */
+    public final ThreadFactory threadFactory;
+
+    /**
+     * The seed of the shuffles of the dealer (config.randomSeed, or a random one if it is 0).
+     */
+    public final long seed;
+
+    /**
+     * The journal of the game events (GameJournal.OFF if config.journalFile is not set).
+     */
+    public final GameJournal journal;
+
     public Env(Logger logger, Config config, UserInterface ui, Util util) {
+        this(logger, config, ui, util, null);
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, SetCatalog catalog) {
+        this(logger, config, ui, util, catalog, config.randomSeed != 0 ? config.randomSeed : ThreadLocalRandom.current().nextLong());
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, SetCatalog catalog, long seed) {
+        this.seed = seed;
         this.logger = logger;
         this.config = config;
         this.ui = ui;
         this.util = util;
+        this.catalog = catalog;
+        this.clock = config.virtualClock ? new VirtualClock() : new RealClock();
+        ThreadFactory threads = ThreadLogger.threadFactory(config.virtualThreads, logger);
+        this.threadFactory = clock.participants(threads);
+        this.journal = GameJournal.open(config, clock, threads, seed, logger);
     }
 }
@@ -0,0 +1,108 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+/**
+ * A single game: the table, the players and the dealer of an environment, played to its end by whichever thread runs
+ * it (see GameHost and Simulation). The players are human or computer players as configured, but nothing presses the
+ * keys of human players unless the user interface does.
+ */
+public class Game implements Runnable {
+
+    /**
+     * The game environment object.
+     */
+    public final Env env;
+
+    /**
+     * Game entities.
+     */
+    private final Table table;
+    private final Player[] players;
+    private final Dealer dealer;
+
+    /**
+     * The times the game started and ended (see env.clock).
+     */
+    private volatile long startMillis;
+    private volatile long endMillis;
+
+    public Game(Env env) {
+        this.env = env;
+        this.table = new Table(env);
+        this.players = new Player[env.config.players];
+        this.dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
+    }
+
+    /**
+     * Plays the game to its end, with the current thread as the dealer thread (it takes part in the game clock
+     * meanwhile). The player threads are created by env.threadFactory.
+     */
+    @Override
+    public void run() {
+        Thread thread = Thread.currentThread();
+        env.clock.register(thread);
+        try {
+            startMillis = env.clock.millis();
+            dealer.run();
+            endMillis = env.clock.millis();
+        } finally {
+            env.clock.deregister(thread);
+        }
+    }
+
+    /**
+     * Ends the game early (the thread that runs it returns once all the players are done).
+     */
+    public void terminate() {
+        dealer.terminate();
+    }
+
+    /**
+     * @return - the score of every player.
+     */
+    public int[] scores() {
+        int[] scores = new int[players.length];
+        for (int i = 0; i < players.length; i++)
+            scores[i] = players[i].score();
+        return scores;
+    }
+
+    /**
+     * @return - the number of penalties the players got in the game.
+     */
+    public int penalties() {
+        int penalties = 0;
+        for (Player player : players)
+            penalties += player.penalties();
+        return penalties;
+    }
+
+    /**
+     * @return - the ids of the players who won the game (see Dealer.announceWinners).
+     */
+    public int[] winners() {
+        return dealer.winners();
+    }
+
+    /**
+     * @return - the length of the game in milliseconds of its clock (so with a virtual clock, of game time).
+     */
+    public long length() {
+        return endMillis - startMillis;
+    }
+
+    /**
+     * @return - the number of sets collected in the game.
+     */
+    public int sets() {
+        int sets = 0;
+        for (Player player : players)
+            sets += player.score();
+        return sets;
+    }
+}
@@ -0,0 +1,90 @@
+package bguspl.set;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The time of a game, and the only way the game threads wait for time to pass or for each other (see Env.clock).
+ * Times are in milliseconds, from an arbitrary origin, and only differences between them mean anything.
+ * A real clock (RealClock) follows the wall time, a virtual clock (VirtualClock) jumps to the next time a thread waits
+ * for, as soon as all the game threads (its participants) wait.
+ */
+public interface GameClock {
+
+    /**
+     * @return - the current time in milliseconds (monotonic).
+     */
+    long millis();
+
+    /**
+     * Waits until the current thread is unparked (see unpark). May return spuriously, so the caller checks again.
+     *
+     * @param blocker - the object the thread waits for (for thread dumps).
+     */
+    void park(Object blocker);
+
+    /**
+     * Waits until the current thread is unparked (see unpark) or until a time. May return spuriously.
+     *
+     * @param blocker  - the object the thread waits for (for thread dumps).
+     * @param deadline - the time to wait until (see millis).
+     */
+    void parkUntil(Object blocker, long deadline);
+
+    /**
+     * Unparks a thread that waits in park or parkUntil, or makes its next park return at once if it does not wait.
+     *
+     * @param thread - the thread to unpark.
+     */
+    void unpark(Thread thread);
+
+    /**
+     * Waits for an amount of time (unpark does not cut it short).
+     *
+     * @param millis - the time to wait, in milliseconds.
+     */
+    void sleep(long millis) throws InterruptedException;
+
+    /**
+     * Waits until a thread terminates.
+     *
+     * @param thread - the thread to wait for.
+     */
+    void join(Thread thread) throws InterruptedException;
+
+    /**
+     * @return - true iff the time only passes while all the participants wait on the clock, so a participant must
+     * never wait for another one in any other way (e.g. on a lock that the other one holds while it sleeps).
+     */
+    boolean virtual();
+
+    /**
+     * Adds a thread to the threads of the game, before it is started.
+     */
+    void register(Thread thread);
+
+    /**
+     * Removes a thread from the threads of the game, once it is done.
+     */
+    void deregister(Thread thread);
+
+    /**
+     * Returns a thread factory that registers every thread it creates, and deregisters it when its target is done.
+     *
+     * @param factory - the factory that creates the threads.
+     * @return - the thread factory.
+     */
+    default ThreadFactory participants(ThreadFactory factory) {
+        return target -> {
+            Thread[] created = new Thread[1];
+            created[0] = factory.newThread(() -> {
+                try {
+                    target.run();
+                } finally {
+                    deregister(created[0]);
+                }
+            });
+            register(created[0]);
+            return created[0];
+        };
+    }
+}
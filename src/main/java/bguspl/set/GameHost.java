@@ -0,0 +1,91 @@
+package bguspl.set;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Hosts many independent games in one JVM. The games share the immutable configuration, utility lookup tables and set
+ * catalog, and their dealers run on a bounded pool of threads (one game per pool thread at a time, the other games
+ * wait for their turn), so the number of dealer threads follows the number of cores and not the number of games.
+ * The player threads of a game are created by its env.threadFactory: with VirtualThreads they are virtual threads, so
+ * they too run on a bounded pool (the carrier threads of the JDK).
+ */
+public class GameHost implements AutoCloseable {
+
+    private final Logger logger;
+    private final Config config;
+    private final Util util;
+    private final SetCatalog catalog;
+    private final ExecutorService executor;
+
+    /**
+     * @param logger      - the logger shared by the games.
+     * @param config      - the configuration shared by the games.
+     * @param util        - the utility object shared by the games.
+     * @param parallelism - the number of games that run at once.
+     */
+    public GameHost(Logger logger, Config config, Util util, int parallelism) {
+        this.logger = logger;
+        this.config = config;
+        this.util = util;
+        this.catalog = SetCatalog.load(config, util, logger);
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, target -> {
+            Thread thread = new Thread(target, "game-host-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts a game with no user interface.
+     *
+     * @return - the game, once it is over.
+     */
+    public Future<Game> submit() {
+        return submit(new NoUserInterface());
+    }
+
+    /**
+     * Starts a game with no user interface, dealt with a given seed.
+     *
+     * @param seed - the seed of the shuffles of the dealer.
+     * @return - the game, once it is over.
+     */
+    public Future<Game> submit(long seed) {
+        return start(new Env(logger, config, new NoUserInterface(), util, catalog, seed));
+    }
+
+    /**
+     * Starts a game.
+     *
+     * @param ui - the user interface of the game.
+     * @return - the game, once it is over.
+     */
+    public Future<Game> submit(UserInterface ui) {
+        return start(new Env(logger, config, ui, util, catalog));
+    }
+
+    private Future<Game> start(Env env) {
+        Game game = new Game(env);
+        return executor.submit(game, game);
+    }
+
+    /**
+     * Waits for all the games that were started to end, and stops the pool. If the calling thread is interrupted, it
+     * returns at once with the interrupt flag set (the games that were started still run to their end).
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package bguspl.set;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * An append-only binary journal of the events of a game (see JournalReplay), kept if config.journalFile is set.
+ * The game threads only put fixed size records in a ring (no lock, no allocation, no I/O); a writer thread of its own
+ * (from the thread factory of the game, but not a participant of its clock) moves them to a buffer and writes the
+ * buffer to the file through a FileChannel. The writer sleeps while the ring is empty, and the game thread that
+ * records the next event wakes it up.
+ * The file starts with a header (MAGIC, VERSION, featureSize, featureCount, rows, columns, players as ints, then the
+ * seed of the dealer as a long), followed by records of RECORD_BYTES bytes: the type of the event (a byte), its time
+ * (a long, see Env.clock) and two ints whose meaning depends on the type (see the event types).
+ * The events that change the table are recorded under the table lock, so they are in the order they happened.
+ * Recording never blocks a game thread: if the writer falls behind by a whole ring (e.g. on a slow disk), the events
+ * are lost, and a LOST record with their number takes their place.
+ */
+public class GameJournal {
+
+    public static final int MAGIC = 0x5345544A; // "SETJ"
+    public static final int VERSION = 1;
+    public static final int HEADER_BYTES = 7 * Integer.BYTES + Long.BYTES;
+    public static final int RECORD_BYTES = 1 + Long.BYTES + 2 * Integer.BYTES;
+
+    // the event types (and their two ints)
+    public static final byte PLACE_CARD = 1;        // slot, card
+    public static final byte REMOVE_CARD = 2;       // slot, card
+    public static final byte PLACE_TOKEN = 3;       // player, slot
+    public static final byte REMOVE_TOKEN = 4;      // player, slot
+    public static final byte CLEAR_SLOT_TOKENS = 5; // slot, 0 (the tokens of all the players)
+    public static final byte CLEAR_ALL_TOKENS = 6;  // 0, 0
+    public static final byte SUBMIT = 7;            // player, 0 (the set is the player's tokens)
+    public static final byte POINT = 8;             // player, score
+    public static final byte PENALTY = 9;           // player, penalties
+    public static final byte DROP = 10;             // player, 0 (the set changed before it was checked)
+    public static final byte FREEZE = 11;           // player, milliseconds
+    public static final byte RESHUFFLE = 12;        // 0, 0 (all the cards go back to the deck)
+    public static final byte WINNER = 13;           // player, score
+    public static final byte LOST = 14;             // events, 0 (not recorded, since the ring was full)
+
+    /**
+     * The journal of a game that is not journaled.
+     */
+    public static final GameJournal OFF = new GameJournal();
+
+    private static final int RING_RECORDS = 1 << 14;
+    private static final int BUFFER_BYTES = 1 << 16;
+
+    /**
+     * The files of the journals of this process that are still written (see open).
+     */
+    private static final Set<Path> OPEN = ConcurrentHashMap.newKeySet();
+
+    private final GameClock clock;
+    private final Logger logger;
+    private final Path path;
+    private final FileChannel channel;
+    private final Thread writer;
+
+    // the ring of records (time, type, the two ints) shared by the game threads (see SetSubmissionRing)
+    private final long[] records;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private long head;
+
+    // the number of events lost since the last LOST record, and the first position they were lost at
+    private final AtomicLong lost = new AtomicLong();
+    private final AtomicLong lostAt = new AtomicLong(Long.MAX_VALUE);
+    private long lostTotal;
+
+    // the time of the last record written (used by the writer only)
+    private long lastTime = Long.MIN_VALUE;
+
+    private volatile boolean closed;
+    private volatile boolean failed;
+
+    // true while the writer may park (see idle)
+    private volatile boolean parked;
+
+    private GameJournal() {
+        this.clock = null;
+        this.logger = null;
+        this.path = null;
+        this.channel = null;
+        this.writer = null;
+        this.records = null;
+        this.sequences = null;
+    }
+
+    private GameJournal(Config config, GameClock clock, ThreadFactory threads, long seed, Logger logger, Path path)
+            throws IOException {
+        this.clock = clock;
+        this.logger = logger;
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).putInt(config.featureSize).putInt(config.featureCount)
+                .putInt(config.rows).putInt(config.columns).putInt(config.players).putLong(seed);
+        header.flip();
+        while (header.hasRemaining())
+            channel.write(header);
+
+        this.records = new long[RING_RECORDS * 3];
+        this.sequences = new AtomicLongArray(RING_RECORDS);
+        for (int i = 0; i < RING_RECORDS; ++i)
+            sequences.set(i, i);
+        this.writer = threads.newThread(this::write);
+        this.writer.setName("journal " + path.getFileName());
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Opens the journal of a game.
+     *
+     * @param config  - the configuration (the journal is kept only if config.journalFile is set; if it has a %d, it is
+     *                replaced by the seed, so games with different seeds get files of their own).
+     * @param clock   - the clock of the game (for the times of the events).
+     * @param threads - the factory of the writer thread.
+     * @param seed    - the seed of the dealer of the game.
+     * @param logger  - the logger.
+     * @return - the journal, or OFF if there is none (or it could not be opened). If another journal of this process
+     * still writes to the file (e.g. a game with the same seed on a GameHost), it gets the file with -2 (or -3, ...)
+     * before its extension instead.
+     */
+    public static GameJournal open(Config config, GameClock clock, ThreadFactory threads, long seed, Logger logger) {
+        if (config.journalFile.isEmpty()) return OFF;
+        String file = String.format(config.journalFile, seed);
+        Path path = Paths.get(file).toAbsolutePath().normalize();
+        int copy = 1;
+        while (!OPEN.add(path))
+            path = Paths.get(suffixed(file, "-" + ++copy)).toAbsolutePath().normalize();
+        if (copy > 1)
+            logger.info("the journal " + file + " is written by another game, using " + path);
+        try {
+            return new GameJournal(config, clock, threads, seed, logger, path);
+        } catch (IOException e) {
+            OPEN.remove(path);
+            logger.severe("cannot open the journal " + path + ": " + e);
+            return OFF;
+        }
+    }
+
+    /**
+     * Adds a suffix to the name of a file, before its extension.
+     *
+     * @param file   - the file (e.g. "games/game-7.journal").
+     * @param suffix - the suffix (e.g. "-2").
+     * @return - the file with the suffix (e.g. "games/game-7-2.journal").
+     */
+    static String suffixed(String file, String suffix) {
+        int name = Math.max(file.lastIndexOf('/'), file.lastIndexOf(File.separatorChar)) + 1;
+        int extension = file.lastIndexOf('.');
+        return extension > name ? file.substring(0, extension) + suffix + file.substring(extension) : file + suffix;
+    }
+
+    /**
+     * @return - true iff the events are recorded.
+     */
+    public boolean enabled() {
+        return writer != null;
+    }
+
+    /**
+     * Records an event. Called by any game thread (possibly under the table lock), so it never waits: if the writer is
+     * behind by a whole ring, the event is lost (see LOST).
+     *
+     * @param type - the type of the event.
+     * @param a    - the first int of the event.
+     * @param b    - the second int of the event.
+     */
+    public void record(byte type, int a, int b) {
+        if (writer == null || failed) return;
+        long time = clock.millis();
+        long position;
+        int index;
+        while (true) {
+            position = tail.get();
+            index = (int) position & (RING_RECORDS - 1);
+            long sequence = sequences.get(index);
+            if (sequence == position && tail.compareAndSet(position, position + 1)) break;
+            if (sequence < position) {
+                // the ring is full: the event is counted, and goes before the record at this position
+                lost.incrementAndGet();
+                lostAt.accumulateAndGet(position, Math::min);
+                LockSupport.unpark(writer);
+                return;
+            }
+        }
+        records[index * 3] = time;
+        records[index * 3 + 1] = type;
+        records[index * 3 + 2] = (long) a << 32 | b & 0xFFFFFFFFL;
+        // a volatile write before reading parked, so either the writer sees the record or this thread sees it park
+        sequences.set(index, position + 1);
+        if (parked) LockSupport.unpark(writer);
+    }
+
+    /**
+     * Writes all the events recorded so far and closes the file. Called once the game is over.
+     */
+    public void close() {
+        if (writer == null || closed) return;
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException ignored) {}
+    }
+
+    /**
+     * The main loop of the writer thread.
+     */
+    private void write() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+        try {
+            while (true) {
+                boolean closing = closed;
+                int moved = 0;
+                while (buffer.remaining() >= RECORD_BYTES && poll(buffer))
+                    ++moved;
+                if (buffer.remaining() < RECORD_BYTES || (moved == 0 && buffer.position() > 0))
+                    flush(buffer);
+                if (moved == 0) {
+                    if (closing) break;
+                    idle();
+                }
+            }
+            flush(buffer);
+            if (lostTotal > 0)
+                logger.warning("the journal fell behind and lost " + lostTotal + " events.");
+        } catch (IOException e) {
+            failed = true;
+            logger.severe("cannot write the journal: " + e);
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException ignored) {}
+            OPEN.remove(path);
+        }
+    }
+
+    /**
+     * Parks the writer until there is a record to write, events are lost or the journal is closed (record and close
+     * unpark it). May return spuriously.
+     */
+    private void idle() {
+        parked = true;
+        if (sequences.get((int) head & (RING_RECORDS - 1)) != head + 1 && lostAt.get() == Long.MAX_VALUE && !closed)
+            LockSupport.park(this);
+        parked = false;
+    }
+
+    /**
+     * Moves the oldest record from the ring to the buffer (or a LOST record, if events were lost before it). A thread
+     * reads the time before it claims a record, so a record may be a little older than the one before it, and then
+     * gets its time.
+     *
+     * @return - false iff there is no record ready.
+     */
+    private boolean poll(ByteBuffer buffer) {
+        if (head >= lostAt.get()) {
+            lostAt.set(Long.MAX_VALUE);
+            long count = lost.getAndSet(0);
+            if (count > 0) {
+                lostTotal += count;
+                lastTime = Math.max(lastTime, clock.millis());
+                buffer.put(LOST).putLong(lastTime).putInt((int) Math.min(count, Integer.MAX_VALUE)).putInt(0);
+                return true;
+            }
+        }
+        int index = (int) head & (RING_RECORDS - 1);
+        if (sequences.get(index) != head + 1) return false;
+        long ints = records[index * 3 + 2];
+        lastTime = Math.max(lastTime, records[index * 3]);
+        buffer.put((byte) records[index * 3 + 1]).putLong(lastTime)
+                .putInt((int) (ints >>> 32)).putInt((int) ints);
+        sequences.lazySet(index, head + RING_RECORDS);
+        head++;
+        return true;
+    }
+
+    private void flush(ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+        buffer.clear();
+    }
+}
@@ -0,0 +1,263 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Replays the journal of a game (see GameJournal): rebuilds the cards and tokens on the table event by event, and
+ * verifies that every event is possible at that point of the game (a card is placed on an empty slot and only once at
+ * a time, a token on a card, a set is submitted with all the tokens, a point is given for a legal set and a penalty
+ * for an illegal one, the winners have the top score, and the time never goes back). A verdict is for the oldest set
+ * of the player that is waiting, as it was submitted (the player may be released and move its tokens before the dealer
+ * gets to it, see Dealer.removeCardsFromTable). The events after a LOST record (see GameJournal.LOST) are replayed,
+ * but not verified. With --print it also prints every event and the table after every reshuffle.
+ * Usage (after mvn compile): java -cp target/classes bguspl.set.JournalReplay journal-file [--print]
+ */
+public class JournalReplay {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.out.println("usage: java bguspl.set.JournalReplay journal-file [--print]");
+            return;
+        }
+        boolean print = args.length > 1 && args[1].equals("--print");
+        long start = System.nanoTime();
+        Summary summary = replay(Paths.get(args[0]), print ? System.out : null);
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d events verified in %.3f s (a game of %.1f s, seed %d)%n",
+                summary.events, seconds, summary.gameMillis / 1000.0, summary.seed);
+        if (summary.lost > 0)
+            System.out.printf("%d events were lost, the events after the first loss were not verified%n", summary.lost);
+        System.out.printf("%d cards placed, %d sets, %d penalties, %d dropped sets, %d reshuffles%n",
+                summary.cardsPlaced, summary.sets, summary.penalties, summary.drops, summary.reshuffles);
+        System.out.println("scores " + Arrays.toString(summary.scores) + ", winners " + Arrays.toString(summary.winners));
+    }
+
+    /**
+     * What a journal holds, once it is replayed.
+     */
+    public static class Summary {
+        public long seed;
+        public long events;
+        public long gameMillis;
+        public int cardsPlaced;
+        public int sets;
+        public int penalties;
+        public int drops;
+        public int reshuffles;
+        public long lost;
+        public int[] scores;
+        public int[] winners = new int[0];
+    }
+
+    /**
+     * Replays and verifies a journal.
+     *
+     * @param file - the journal file.
+     * @param out  - where to print the events (null to print nothing).
+     * @return - the summary of the game.
+     * @throws IllegalStateException - if the journal is not a journal of a game, or an event is not possible.
+     */
+    public static Summary replay(Path file, PrintStream out) throws IOException {
+        ByteBuffer journal;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            journal = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (journal.remaining() < GameJournal.HEADER_BYTES || journal.getInt() != GameJournal.MAGIC)
+            throw new IllegalStateException(file + " is not a game journal");
+        if (journal.getInt() != GameJournal.VERSION)
+            throw new IllegalStateException(file + " is a journal of another version");
+        int featureSize = journal.getInt();
+        int featureCount = journal.getInt();
+        int rows = journal.getInt();
+        int columns = journal.getInt();
+        int players = journal.getInt();
+        Summary summary = new Summary();
+        summary.seed = journal.getLong();
+        summary.scores = new int[players];
+
+        Properties properties = new Properties();
+        properties.put("FeatureSize", Integer.toString(featureSize));
+        properties.put("FeatureCount", Integer.toString(featureCount));
+        properties.put("LogLevel", "WARNING");
+        Util util = new UtilImpl(new Config(Logger.getLogger("SetJournalReplayLogger"), properties));
+
+        int tableSize = rows * columns;
+        int[] slotToCard = new int[tableSize];
+        Arrays.fill(slotToCard, -1);
+        int[] cardToSlot = new int[(int) Math.pow(featureSize, featureCount)];
+        Arrays.fill(cardToSlot, -1);
+        boolean[] collected = new boolean[cardToSlot.length];
+        boolean[][] tokens = new boolean[players][tableSize];
+        int[] tokenCounts = new int[players];
+        int[] penalties = new int[players];
+        List<ArrayDeque<int[]>> submitted = new ArrayList<>(players);
+        for (int player = 0; player < players; ++player)
+            submitted.add(new ArrayDeque<>());
+        long firstTime = 0;
+        long time = Long.MIN_VALUE;
+
+        while (journal.remaining() >= GameJournal.RECORD_BYTES) {
+            byte type = journal.get();
+            long eventTime = journal.getLong();
+            int a = journal.getInt();
+            int b = journal.getInt();
+            if (summary.events++ == 0) firstTime = eventTime;
+            check(eventTime >= time, summary, "the time went back");
+            time = eventTime;
+            if (out != null) out.printf("[%9.3f s] %s%n", (time - firstTime) / 1000.0, describe(type, a, b));
+
+            switch (type) {
+                case GameJournal.PLACE_CARD:
+                    check(slotToCard[a] == -1, summary, "slot " + a + " is not empty");
+                    check(cardToSlot[b] == -1 && !collected[b], summary, "card " + b + " is not in the deck");
+                    slotToCard[a] = b;
+                    cardToSlot[b] = a;
+                    summary.cardsPlaced++;
+                    break;
+                case GameJournal.REMOVE_CARD:
+                    check(slotToCard[a] == b, summary, "card " + b + " is not in slot " + a);
+                    for (int player = 0; player < players; ++player)
+                        check(!tokens[player][a], summary, "slot " + a + " still has a token of player " + player);
+                    slotToCard[a] = -1;
+                    cardToSlot[b] = -1;
+                    break;
+                case GameJournal.PLACE_TOKEN:
+                    check(slotToCard[b] != -1, summary, "slot " + b + " has no card");
+                    check(!tokens[a][b] && tokenCounts[a] < featureSize, summary, "player " + a + " cannot place a token");
+                    tokens[a][b] = true;
+                    tokenCounts[a]++;
+                    break;
+                case GameJournal.REMOVE_TOKEN:
+                    check(tokens[a][b], summary, "player " + a + " has no token in slot " + b);
+                    tokens[a][b] = false;
+                    tokenCounts[a]--;
+                    break;
+                case GameJournal.CLEAR_SLOT_TOKENS:
+                    for (int player = 0; player < players; ++player)
+                        if (tokens[player][a]) {
+                            tokens[player][a] = false;
+                            tokenCounts[player]--;
+                        }
+                    break;
+                case GameJournal.CLEAR_ALL_TOKENS:
+                    for (int player = 0; player < players; ++player) {
+                        Arrays.fill(tokens[player], false);
+                        tokenCounts[player] = 0;
+                    }
+                    break;
+                case GameJournal.SUBMIT:
+                    check(tokenCounts[a] == featureSize, summary, "player " + a + " submitted " + tokenCounts[a] + " tokens");
+                    int[] set = new int[featureSize];
+                    for (int slot = 0, found = 0; slot < tableSize && found < featureSize; ++slot)
+                        if (tokens[a][slot]) set[found++] = slotToCard[slot];
+                    submitted.get(a).add(set);
+                    break;
+                case GameJournal.POINT:
+                case GameJournal.PENALTY:
+                    int[] cards = submitted.get(a).poll();
+                    check(cards != null, summary, "player " + a + " has no set to check");
+                    if (summary.lost > 0) {
+                        // the set may have been lost, only the verdict is kept
+                        if (type == GameJournal.POINT) {
+                            summary.scores[a] = b;
+                            summary.sets++;
+                        } else {
+                            penalties[a] = b;
+                            summary.penalties++;
+                        }
+                        break;
+                    }
+                    boolean legal = util.testSet(cards);
+                    if (type == GameJournal.POINT) {
+                        check(legal, summary, "player " + a + " got a point for an illegal set");
+                        for (int card : cards)
+                            check(cardToSlot[card] != -1, summary, "player " + a + " got a point for a set not on the table");
+                        check(b == ++summary.scores[a], summary, "the score of player " + a + " is not " + b);
+                        for (int card : cards)
+                            collected[card] = true;
+                        summary.sets++;
+                    } else {
+                        check(!legal, summary, "player " + a + " got a penalty for a legal set");
+                        check(b == ++penalties[a], summary, "player " + a + " does not have " + b + " penalties");
+                        summary.penalties++;
+                    }
+                    break;
+                case GameJournal.DROP:
+                    check(submitted.get(a).poll() != null, summary, "player " + a + " has no set to drop");
+                    summary.drops++;
+                    break;
+                case GameJournal.FREEZE:
+                    break;
+                case GameJournal.LOST:
+                    summary.lost += a;
+                    break;
+                case GameJournal.RESHUFFLE:
+                    summary.reshuffles++;
+                    if (out != null) printTable(out, slotToCard, columns);
+                    break;
+                case GameJournal.WINNER:
+                    int top = 0;
+                    for (int score : summary.scores)
+                        top = Math.max(top, score);
+                    check(b == top && summary.scores[a] == top, summary, "player " + a + " is not a winner");
+                    summary.winners = Arrays.copyOf(summary.winners, summary.winners.length + 1);
+                    summary.winners[summary.winners.length - 1] = a;
+                    break;
+                default:
+                    check(false, summary, "unknown event type " + type);
+            }
+        }
+        check(!journal.hasRemaining(), summary, "the journal ends in the middle of an event");
+        summary.gameMillis = summary.events == 0 ? 0 : time - firstTime;
+        return summary;
+    }
+
+    /**
+     * Fails the replay if the condition does not hold, unless events were lost before (then the state of the table is
+     * not known).
+     */
+    private static void check(boolean condition, Summary summary, String message) {
+        if (!condition && summary.lost == 0) throw new IllegalStateException("event " + summary.events + ": " + message);
+    }
+
+    private static String describe(byte type, int a, int b) {
+        switch (type) {
+            case GameJournal.PLACE_CARD: return "card " + b + " placed in slot " + a;
+            case GameJournal.REMOVE_CARD: return "card " + b + " removed from slot " + a;
+            case GameJournal.PLACE_TOKEN: return "player " + a + " placed a token in slot " + b;
+            case GameJournal.REMOVE_TOKEN: return "player " + a + " removed a token from slot " + b;
+            case GameJournal.CLEAR_SLOT_TOKENS: return "tokens removed from slot " + a;
+            case GameJournal.CLEAR_ALL_TOKENS: return "all the tokens removed";
+            case GameJournal.SUBMIT: return "player " + a + " submitted a set";
+            case GameJournal.POINT: return "player " + a + " scored (score " + b + ")";
+            case GameJournal.PENALTY: return "player " + a + " penalized (" + b + " penalties)";
+            case GameJournal.DROP: return "the set of player " + a + " dropped";
+            case GameJournal.FREEZE: return "player " + a + " frozen for " + b + " ms";
+            case GameJournal.RESHUFFLE: return "reshuffle";
+            case GameJournal.WINNER: return "player " + a + " won (score " + b + ")";
+            case GameJournal.LOST: return a + " events lost";
+            default: return "event " + type;
+        }
+    }
+
+    private static void printTable(PrintStream out, int[] slotToCard, int columns) {
+        for (int slot = 0; slot < slotToCard.length; slot += columns) {
+            StringBuilder row = new StringBuilder("             ");
+            for (int column = 0; column < columns; ++column)
+                row.append(String.format("%5s", slotToCard[slot + column] == -1 ? "-" : slotToCard[slot + column]));
+            out.println(row);
+        }
+    }
+}
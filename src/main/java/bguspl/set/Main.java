@@ -43,7 +43,7 @@ public class Main {
         logger = initLogger();
         ThreadLogger.logStart(logger, Thread.currentThread().getName());
         Config config = new Config(logger, "config.properties");
-        Util util = new UtilImpl(config);
+        Util util = new PackedUtilImpl(config);
 
         Player[] players = new Player[config.players];
         UserInterface ui = null;
@@ -57,7 +57,7 @@ public class Main {
         }
         ui = new UserInterfaceDecorator(logger, util, ui);
 
-        Env env = new Env(logger, config, ui, util);
+        Env env = new Env(logger, config, ui, util, SetCatalog.load(config, util, logger));
 
         // create the game entities
         Table table = new Table(env);
@@ -66,7 +66,7 @@ public class Main {
             players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
 
         // start the dealer thread
-        ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", logger);
+        ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", logger, env.threadFactory);
         dealerThread.startWithLog();
 
         try {
@@ -0,0 +1,122 @@
+package bguspl.set;
+
+/**
+ * An implementation of the Util interface that packs the features of each card into a single long (2 bits per
+ * feature), so that a set of 3 cards is tested with a few word-wide operations instead of a loop over the features.
+ * Only used when config.featureSize is 3 and the features fit in a word, otherwise everything is done by UtilImpl.
+ */
+public class PackedUtilImpl extends UtilImpl {
+
+    /**
+     * The number of bits used for each feature in a packed card.
+     */
+    private static final int FEATURE_BITS = 2;
+
+    /**
+     * The largest deck for which the packed cards are precomputed. Larger decks pack the cards on the fly.
+     */
+    private static final int MAX_PACKED_TABLE_SIZE = 1 << 20;
+
+    /**
+     * True iff the cards can be packed (i.e. config.featureSize is 3 and config.featureCount features fit in a long).
+     */
+    private final boolean packed;
+
+    /**
+     * The low bit of every feature in a packed card.
+     */
+    private final long lowBits;
+
+    /**
+     * All the bits in use in a packed card.
+     */
+    private final long usedBits;
+
+    /**
+     * packedCards[card] = the packed features of card (null if the deck is too large to precompute).
+     */
+    private final long[] packedCards;
+
+    /**
+     * byteToCard[b] = the card id value of the 4 features packed in the byte b.
+     */
+    private final int[] byteToCard = new int[1 << Byte.SIZE];
+
+    /**
+     * The card id weight of a byte of packed features (config.featureSize ^ 4).
+     */
+    private final int byteWeight;
+
+    public PackedUtilImpl(Config config) {
+        super(config);
+
+        packed = config.featureSize == 3 && config.featureCount * FEATURE_BITS <= Long.SIZE;
+        usedBits = config.featureCount * FEATURE_BITS == Long.SIZE ? -1L : (1L << config.featureCount * FEATURE_BITS) - 1;
+        lowBits = 0x5555555555555555L & usedBits;
+
+        byteWeight = (int) Math.pow(config.featureSize, Byte.SIZE / FEATURE_BITS);
+        for (int b = 0; b < byteToCard.length; ++b)
+            for (int i = Byte.SIZE / FEATURE_BITS - 1; i >= 0; --i)
+                byteToCard[b] = byteToCard[b] * config.featureSize + (b >>> i * FEATURE_BITS & 3);
+
+        if (packed && config.deckSize <= MAX_PACKED_TABLE_SIZE) {
+            long[] cards = new long[config.deckSize];
+            for (int card = 0; card < config.deckSize; ++card)
+                cards[card] = packFeatures(card);
+            packedCards = cards;
+        } else packedCards = null;
+    }
+
+    /**
+     * Packs the features of a card into a long. The last feature (the least significant digit of the card id)
+     * goes to the lowest bits.
+     */
+    private long pack(int card) {
+        return packedCards != null ? packedCards[card] : packFeatures(card);
+    }
+
+    private long packFeatures(int card) {
+        long bits = 0;
+        for (int i = 0; i < config.featureCount; ++i)
+            bits = bits << FEATURE_BITS | feature(card, i);
+        return bits;
+    }
+
+    /**
+     * Converts packed features back to a card id, a byte (4 features) at a time.
+     */
+    private int unpack(long bits) {
+        long card = 0, weight = 1;
+        for (int i = 0; i < config.featureCount; i += Byte.SIZE / FEATURE_BITS, bits >>>= Byte.SIZE, weight *= byteWeight)
+            card += byteToCard[(int) (bits & 0xFF)] * weight;
+        return (int) card;
+    }
+
+    /**
+     * Computes the packed features of the only card that completes two cards to a legal set.
+     * Every feature where a and b are the same keeps that value. Every feature where they differ gets the third
+     * value, which is the one whose 2 bits are both clear in a | b (the values are 00, 01 and 10).
+     *
+     * @param a - the packed features of the first card.
+     * @param b - the packed features of the second card.
+     * @return - the packed features of the third card.
+     */
+    private long third(long a, long b) {
+        long x = a ^ b;
+        long same = ~(x | x >>> 1) & lowBits;
+        same |= same << 1;
+        return a & same | ~(a | b) & usedBits & ~same;
+    }
+
+    @Override
+    public boolean testSet(int[] cards) {
+        if (!packed || cards.length != 3) return super.testSet(cards);
+        return third(pack(cards[0]), pack(cards[1])) == pack(cards[2]);
+    }
+
+    @Override
+    protected int completeSet(int[] cards, int m) {
+        if (!packed || m != 2) return super.completeSet(cards, m);
+        return unpack(third(pack(cards[0]), pack(cards[1])));
+    }
+}
@@ -0,0 +1,61 @@
+package bguspl.set;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A game clock that follows the wall time (measured with System.nanoTime, so changes to the system time do not affect
+ * the game). The threads of the game wait with LockSupport, and need not be registered.
+ */
+public class RealClock implements GameClock {
+
+    private final long origin = System.nanoTime();
+
+    @Override
+    public long millis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - origin);
+    }
+
+    @Override
+    public void park(Object blocker) {
+        LockSupport.park(blocker);
+    }
+
+    @Override
+    public void parkUntil(Object blocker, long deadline) {
+        long nanos = TimeUnit.MILLISECONDS.toNanos(deadline - millis());
+        if (nanos > 0) LockSupport.parkNanos(blocker, nanos);
+    }
+
+    @Override
+    public void unpark(Thread thread) {
+        LockSupport.unpark(thread);
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+
+    @Override
+    public void join(Thread thread) throws InterruptedException {
+        thread.join();
+    }
+
+    @Override
+    public boolean virtual() {
+        return false;
+    }
+
+    @Override
+    public void register(Thread thread) {}
+
+    @Override
+    public void deregister(Thread thread) {}
+
+    @Override
+    public ThreadFactory participants(ThreadFactory factory) {
+        return factory;
+    }
+}
@@ -0,0 +1,353 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+
+/**
+ * A catalog of every legal set in the deck of a configuration, with the list of sets each card takes part in.
+ * The catalog itself is immutable and can be shared by any number of games. Each game keeps its own Tracker of the
+ * sets that can still be collected.
+ * The catalog is either built in memory, or (for decks too large for that) persisted to a file and memory-mapped.
+ */
+public class SetCatalog {
+
+    /**
+     * The first int of a catalog file.
+     */
+    private static final int MAGIC = 0x5E7CA7A1;
+
+    /**
+     * The number of ints in the header of a catalog file (magic, featureSize, featureCount, number of sets).
+     */
+    private static final int HEADER_INTS = 4;
+
+    /**
+     * A catalog file is mapped in regions of 2^REGION_SHIFT ints (1 GB), since a single mapping is limited to 2 GB.
+     */
+    private static final int REGION_SHIFT = 28;
+
+    /**
+     * The number of cards in a set.
+     */
+    public final int setSize;
+
+    /**
+     * The number of legal sets in the deck.
+     */
+    public final int setCount;
+
+    /**
+     * The cards of set i are sets[i * setSize] ... sets[(i + 1) * setSize - 1].
+     */
+    private final Ints sets;
+
+    /**
+     * The ids of the sets that card c takes part in are setIds[offsets[c]] ... setIds[offsets[c + 1] - 1].
+     */
+    private final Ints offsets;
+    private final Ints setIds;
+
+    private SetCatalog(int setSize, int setCount, Ints sets, Ints offsets, Ints setIds) {
+        this.setSize = setSize;
+        this.setCount = setCount;
+        this.sets = sets;
+        this.offsets = offsets;
+        this.setIds = setIds;
+    }
+
+    /**
+     * Creates the catalog for a configuration. If config.setCatalogFile is set, the catalog is mapped from that file,
+     * after building it there first if the file does not exist (or was written for another configuration).
+     *
+     * @param config - the game configuration.
+     * @param util   - the util object used to find the sets.
+     * @param logger - the logger.
+     * @return - the catalog.
+     */
+    public static SetCatalog load(Config config, Util util, Logger logger) {
+        if (config.setCatalogFile.isEmpty()) return build(config, util);
+        Path path = Paths.get(config.setCatalogFile);
+        try {
+            if (!matches(path, config)) {
+                logger.info("building set catalog file " + path);
+                write(path, config, util);
+            }
+            return map(path, REGION_SHIFT);
+        } catch (IOException e) {
+            logger.severe("cannot use set catalog file " + path + " (" + e.getMessage() + "), building it in memory.");
+            return build(config, util);
+        }
+    }
+
+    /**
+     * Builds the catalog in memory.
+     */
+    public static SetCatalog build(Config config, Util util) {
+        int[] cards = IntStream.range(0, config.deckSize).toArray();
+        int setSize = config.featureSize;
+        int[][] sets = {new int[setSize * 1024]};
+        int[] counts = new int[config.deckSize];
+        int setCount = util.findSets(cards, cards.length, new Util.SetConsumer() {
+            private int index = 0;
+
+            @Override
+            public boolean accept(int[] set) {
+                if (index + setSize > sets[0].length) sets[0] = Arrays.copyOf(sets[0], sets[0].length * 2);
+                System.arraycopy(set, 0, sets[0], index, setSize);
+                index += setSize;
+                for (int card : set)
+                    ++counts[card];
+                return true;
+            }
+        });
+
+        int setInts = Math.multiplyExact(setCount, setSize);
+        Ints setBuffer = new Ints(IntBuffer.wrap(Arrays.copyOf(sets[0], setInts)));
+        Ints offsets = new Ints(IntBuffer.allocate(config.deckSize + 1));
+        Ints setIds = new Ints(IntBuffer.allocate(setInts));
+        fillIncidence(setBuffer, setCount, counts, offsets, setIds, setSize);
+        return new SetCatalog(setSize, setCount, setBuffer, offsets, setIds);
+    }
+
+    /**
+     * Fills the incidence lists (offsets and setIds) from the sets and the number of sets every card is in.
+     */
+    private static void fillIncidence(Ints sets, int setCount, int[] counts, Ints offsets, Ints setIds, int setSize) {
+        int[] next = new int[counts.length];
+        offsets.put(0, 0);
+        for (int card = 0; card < counts.length; ++card) {
+            next[card] = offsets.get(card);
+            offsets.put(card + 1, next[card] + counts[card]);
+        }
+        for (int id = 0; id < setCount; ++id)
+            for (int i = 0; i < setSize; ++i)
+                setIds.put(next[sets.get((long) id * setSize + i)]++, id);
+    }
+
+    /**
+     * Checks if a catalog file exists, was written for the given configuration and has the length its header
+     * implies (so a truncated file is rebuilt rather than mapped).
+     */
+    private static boolean matches(Path path, Config config) throws IOException {
+        if (!Files.exists(path)) return false;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_INTS * Integer.BYTES).order(ByteOrder.nativeOrder());
+            while (header.hasRemaining() && channel.read(header) >= 0) ;
+            header.flip();
+            if (header.remaining() != HEADER_INTS * Integer.BYTES || header.getInt() != MAGIC
+                    || header.getInt() != config.featureSize || header.getInt() != config.featureCount)
+                return false;
+            int setCount = header.getInt();
+            return setCount >= 0 && channel.size() == fileBytes(config.featureSize, config.deckSize, setCount);
+        }
+    }
+
+    /**
+     * @return - the length in bytes of a catalog file with the given number of sets.
+     */
+    private static long fileBytes(int setSize, int deckSize, int setCount) {
+        return (HEADER_INTS + 2L * setCount * setSize + deckSize + 1) * Integer.BYTES;
+    }
+
+    /**
+     * Writes the catalog of a configuration to a file without keeping the sets in memory: the sets are written as
+     * they are found, then the incidence lists are filled through a mapping of the file.
+     * The file layout is: header, sets, offsets, setIds (all native order ints).
+     */
+    private static void write(Path path, Config config, Util util) throws IOException {
+        int setSize = config.featureSize;
+        int[] counts = new int[config.deckSize];
+        int[] cards = IntStream.range(0, config.deckSize).toArray();
+        long start = HEADER_INTS * Integer.BYTES;
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.nativeOrder());
+            long[] position = {start};
+            int setCount = util.findSets(cards, cards.length, set -> {
+                if (buffer.remaining() < setSize * Integer.BYTES) position[0] += flush(channel, buffer, position[0]);
+                for (int card : set) {
+                    buffer.putInt(card);
+                    ++counts[card];
+                }
+                return true;
+            });
+            flush(channel, buffer, position[0]);
+            // the offsets into setIds are ints
+            if ((long) setCount * setSize > Integer.MAX_VALUE)
+                throw new IOException("too many sets for a catalog file (" + setCount + ")");
+
+            long setInts = (long) setCount * setSize;
+            long offsetsStart = start + setInts * Integer.BYTES;
+            long setIdsStart = offsetsStart + (config.deckSize + 1L) * Integer.BYTES;
+            Ints sets = Ints.map(channel, FileChannel.MapMode.READ_ONLY, start, setInts, REGION_SHIFT);
+            Ints offsets = Ints.map(channel, FileChannel.MapMode.READ_WRITE, offsetsStart, config.deckSize + 1L,
+                    REGION_SHIFT);
+            Ints setIds = Ints.map(channel, FileChannel.MapMode.READ_WRITE, setIdsStart, setInts, REGION_SHIFT);
+            fillIncidence(sets, setCount, counts, offsets, setIds, setSize);
+
+            // the header goes last, so a partially written file is never taken for a valid one
+            ByteBuffer header = ByteBuffer.allocate(HEADER_INTS * Integer.BYTES).order(ByteOrder.nativeOrder());
+            header.putInt(MAGIC).putInt(config.featureSize).putInt(config.featureCount).putInt(setCount).flip();
+            channel.write(header, 0);
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Writes the contents of the buffer to the channel at the given position and clears the buffer.
+     *
+     * @return - the number of bytes written.
+     */
+    private static int flush(FileChannel channel, ByteBuffer buffer, long position) {
+        buffer.flip();
+        int written = 0;
+        try {
+            while (buffer.hasRemaining())
+                written += channel.write(buffer, position + written);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+        return written;
+    }
+
+    /**
+     * Maps a catalog file (written by write, and checked by matches) to memory, in regions of 2^regionShift ints.
+     */
+    static SetCatalog map(Path path, int regionShift) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_INTS * Integer.BYTES).order(ByteOrder.nativeOrder());
+            while (header.hasRemaining() && channel.read(header) >= 0) ;
+            header.flip();
+            header.getInt();
+            int setSize = header.getInt();
+            int deckSize = (int) Math.pow(setSize, header.getInt());
+            int setCount = header.getInt();
+            long setInts = (long) setCount * setSize;
+            long setsStart = HEADER_INTS * Integer.BYTES;
+            long offsetsStart = setsStart + setInts * Integer.BYTES;
+            long setIdsStart = offsetsStart + (deckSize + 1L) * Integer.BYTES;
+            FileChannel.MapMode mode = FileChannel.MapMode.READ_ONLY;
+            return new SetCatalog(setSize, setCount, Ints.map(channel, mode, setsStart, setInts, regionShift),
+                    Ints.map(channel, mode, offsetsStart, deckSize + 1L, regionShift),
+                    Ints.map(channel, mode, setIdsStart, setInts, regionShift));
+        }
+    }
+
+    /**
+     * Returns a card of a set in the catalog.
+     *
+     * @param set   - the set id.
+     * @param index - the index of the card in the set (between 0 and setSize - 1).
+     * @return - the card id.
+     */
+    public int card(int set, int index) {
+        return sets.get((long) set * setSize + index);
+    }
+
+    /**
+     * Creates a new tracker, in which all the sets of the catalog can still be collected.
+     */
+    public Tracker newTracker() {
+        return new Tracker();
+    }
+
+    /**
+     * Keeps the number of sets of the catalog that can still be collected in a single game, i.e. the sets none of
+     * whose cards have left the game.
+     */
+    public class Tracker {
+
+        /**
+         * A bit for every set that can no longer be collected.
+         */
+        private final long[] deadSets = new long[(int) ((setCount + (long) Long.SIZE - 1) / Long.SIZE)];
+
+        /**
+         * The number of sets that can still be collected.
+         */
+        private int completable = setCount;
+
+        /**
+         * Called when a card leaves the game, kills every set it takes part in.
+         *
+         * @param card - the card id.
+         */
+        public void removeCard(int card) {
+            for (int i = offsets.get(card); i < offsets.get(card + 1); ++i) {
+                int set = setIds.get(i);
+                long bit = 1L << set;
+                if ((deadSets[set / Long.SIZE] & bit) == 0) {
+                    deadSets[set / Long.SIZE] |= bit;
+                    --completable;
+                }
+            }
+        }
+
+        /**
+         * Returns the number of sets that can still be collected, in O(1).
+         */
+        public int completableSets() {
+            return completable;
+        }
+    }
+
+    /**
+     * An array of ints in one or more buffers (regions) of 2^shift ints, so it can be larger than a single mapping.
+     */
+    private static class Ints {
+
+        private final IntBuffer[] regions;
+        private final int shift;
+        private final long mask;
+
+        /**
+         * A single buffer (of less than 2^31 ints).
+         */
+        Ints(IntBuffer buffer) {
+            this(new IntBuffer[]{buffer}, Integer.SIZE - 1);
+        }
+
+        private Ints(IntBuffer[] regions, int shift) {
+            this.regions = regions;
+            this.shift = shift;
+            this.mask = (1L << shift) - 1;
+        }
+
+        /**
+         * Maps length ints of a file, starting at a byte position, in regions of 2^shift ints.
+         */
+        static Ints map(FileChannel channel, FileChannel.MapMode mode, long position, long length, int shift)
+                throws IOException {
+            long regionInts = 1L << shift;
+            IntBuffer[] regions = new IntBuffer[(int) ((length + regionInts - 1) / regionInts)];
+            for (int region = 0; region < regions.length; ++region) {
+                long start = region * regionInts;
+                long ints = Math.min(regionInts, length - start);
+                regions[region] = channel.map(mode, position + start * Integer.BYTES, ints * Integer.BYTES)
+                        .order(ByteOrder.nativeOrder()).asIntBuffer();
+            }
+            return new Ints(regions, shift);
+        }
+
+        int get(long index) {
+            return regions[(int) (index >>> shift)].get((int) (index & mask));
+        }
+
+        void put(long index, int value) {
+            regions[(int) (index >>> shift)].put((int) (index & mask), value);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package bguspl.set;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A lazy spliterator over the legal sets in an array of cards.
+ * It walks the combinations of cards in lexicographic order, and every instance covers a range of combination ranks,
+ * so splitting it in the middle of the range gives both halves the same amount of work.
+ * When config.featureSize >= 3 it walks combinations of config.featureSize - 1 cards and completes each one (as in
+ * UtilImpl.findSets), otherwise it tests every combination of config.featureSize cards. With more than 2 cards to
+ * complete, it skips every combination whose first cards already cannot be part of a legal set.
+ */
+class SetSpliterator implements Spliterator<int[]> {
+
+    /**
+     * The smallest range of combinations that is split further.
+     */
+    private static final long MIN_SPLIT_SIZE = 1 << 10;
+
+    private final UtilImpl util;
+    private final int[] cards;
+
+    /**
+     * cardToIndex[card] = the position of the card in the cards array (-1 if none). Shared by all the splits.
+     */
+    private final int[] cardToIndex;
+
+    /**
+     * True iff the combinations are completed by a single card (instead of being tested as they are).
+     */
+    private final boolean complete;
+
+    /**
+     * The number of cards in a combination and the number of cards the combinations are taken from.
+     */
+    private final int m;
+    private final int n;
+
+    /**
+     * The current combination (of positions in the cards array) and its rank.
+     */
+    private final int[] combination;
+    private long rank;
+
+    /**
+     * seen[d][i] = a bit for every value of feature i in the first d + 1 cards of the combination (see
+     * UtilImpl.extendPrefix), or null if combinations are not pruned.
+     */
+    private final int[][] seen;
+
+    /**
+     * The number of leading cards of the combination that are known to be part of a possible set.
+     */
+    private int checked;
+
+    /**
+     * The rank where this spliterator stops (exclusive).
+     */
+    private long end;
+
+    SetSpliterator(UtilImpl util, Config config, int[] cards, int length) {
+        this.util = util;
+        this.cards = cards;
+        complete = config.featureSize >= 3;
+        m = complete ? config.featureSize - 1 : config.featureSize;
+        n = complete ? length - 1 : length;
+        cardToIndex = new int[config.deckSize];
+        Arrays.fill(cardToIndex, -1);
+        for (int i = 0; i < length; ++i)
+            cardToIndex[cards[i]] = i;
+        combination = new int[m];
+        for (int i = 0; i < m; ++i)
+            combination[i] = i;
+        seen = complete && m > 2 ? new int[m - 1][config.featureCount] : null;
+        rank = 0;
+        end = n >= m ? binomial(n, m) : 0;
+    }
+
+    private SetSpliterator(SetSpliterator other, long rank, long end) {
+        util = other.util;
+        cards = other.cards;
+        cardToIndex = other.cardToIndex;
+        complete = other.complete;
+        m = other.m;
+        n = other.n;
+        combination = Arrays.copyOf(other.combination, m);
+        seen = other.seen == null ? null : new int[m - 1][other.seen[0].length];
+        this.rank = rank;
+        this.end = end;
+    }
+
+    /**
+     * The number of combinations of k out of n (saturates at Long.MAX_VALUE).
+     */
+    private static long binomial(int n, int k) {
+        if (k < 0 || k > n) return 0;
+        k = Math.min(k, n - k);
+        long result = 1;
+        for (int i = 1; i <= k; ++i) {
+            if (result > Long.MAX_VALUE / (n - k + i)) return Long.MAX_VALUE;
+            result = result * (n - k + i) / i;
+        }
+        return result;
+    }
+
+    /**
+     * Finds the combination with the given rank in the lexicographic order.
+     */
+    private void unrank(long rank, int[] combination) {
+        int value = 0;
+        for (int i = 0; i < m; ++i) {
+            long count;
+            while (rank >= (count = binomial(n - 1 - value, m - 1 - i))) {
+                rank -= count;
+                ++value;
+            }
+            combination[i] = value++;
+        }
+    }
+
+    /**
+     * Moves to the next combination in lexicographic order.
+     */
+    private void next() {
+        ++rank;
+        int t = m - 1;
+        while (t != 0 && combination[t] == n - m + t) --t;
+        combination[t]++;
+        for (int i = t + 1; i < m; i++) combination[i] = combination[i - 1] + 1;
+        checked = Math.min(checked, t);
+    }
+
+    /**
+     * Skips all the combinations that start with the first t + 1 cards of the current one.
+     * Only when the cards after position t are the first ones possible (as they are after next()) the number of
+     * skipped combinations is known, otherwise it just moves to the next combination.
+     */
+    private void skip(int t) {
+        for (int i = t + 1; i < m; ++i)
+            if (combination[i] != combination[i - 1] + 1) {
+                next();
+                return;
+            }
+        rank += binomial(n - 1 - combination[t], m - 1 - t) - 1;
+        for (int i = t + 1; i < m; ++i)
+            combination[i] = n - m + i;
+        next();
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super int[]> action) {
+        int[] set = new int[complete ? m + 1 : m];
+        while (rank < end) {
+            if (seen != null && checked < m - 1) {
+                int t = checked;
+                while (t < m - 1 && util.extendPrefix(seen, t, cards[combination[t]])) ++t;
+                checked = t;
+                if (t < m - 1) {
+                    skip(t);
+                    continue;
+                }
+            }
+            for (int i = 0; i < m; ++i)
+                set[i] = cards[combination[i]];
+            int last = complete ? util.completeSet(set, m) : -1;
+            boolean found = complete ? last != -1 && cardToIndex[last] > combination[m - 1] : util.testSet(set);
+            next();
+            if (found) {
+                if (complete) set[m] = last;
+                Arrays.sort(set);
+                action.accept(set);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Spliterator<int[]> trySplit() {
+        if (end - rank < MIN_SPLIT_SIZE) return null;
+        long middle = rank + (end - rank) / 2;
+        SetSpliterator prefix = new SetSpliterator(this, rank, middle);
+        rank = middle;
+        unrank(rank, combination);
+        checked = 0;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return end - rank;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+}
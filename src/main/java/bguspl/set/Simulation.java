@@ -0,0 +1,80 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Logger;
+
+/**
+ * A headless simulation of the game, for regression and capacity testing: plays games of computer players only, with
+ * no user interface and none of the cosmetic delays (placing and removing cards, and the pause at the end of the game),
+ * then reports how fast they were played. The game rules are not changed, so with a turn timeout (TurnTimeoutSeconds > 0)
+ * a table with no legal set still waits for the timeout; TurnTimeoutSeconds=-1 reshuffles it at once, and
+ * VirtualClock=True keeps all the times of the rules but plays them in no time (see VirtualClock).
+ * The games run at once on a GameHost, as many at a time as there are cores (or as given).
+ * Usage (after mvn compile): java -cp target/classes bguspl.set.Simulation [games] [configuration file] [parallelism]
+ */
+public class Simulation {
+
+    private static final int DEFAULT_GAMES = 10;
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        String configFile = args.length > 1 ? args[1] : "config.properties";
+        int parallelism = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        Logger logger = Logger.getLogger("SetSimulationLogger");
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new ConsoleHandler());
+        Properties properties = Config.loadProperties(configFile, logger);
+        headless(properties);
+        Config config = new Config(logger, properties);
+        if (config.computerPlayers == 0) {
+            logger.severe("there are no computer players to simulate.");
+            return;
+        }
+        Util util = new PackedUtilImpl(config);
+
+        long start = System.nanoTime();
+        long sets = 0;
+        try (GameHost host = new GameHost(logger, config, util, parallelism)) {
+            List<Future<Game>> played = new ArrayList<>();
+            for (int game = 0; game < games; ++game)
+                played.add(host.submit());
+            for (Future<Game> game : played)
+                sets += game.get().sets();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%d games of %d computer players (%d at a time), %d sets in %.2f s: %.2f games/s, %.1f sets/s%n",
+                games, config.computerPlayers, parallelism, sets, seconds, games / seconds, sets / seconds);
+    }
+
+    /**
+     * Changes a configuration for a headless simulation: no human players, no cosmetic delays, no hints and only
+     * warnings in the log. The game rules (timeouts and freezes) are left as configured.
+     *
+     * @param properties - the configuration properties to change.
+     */
+    public static void headless(Properties properties) {
+        properties.put("HumanPlayers", "0");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("EndGamePauseSeconds", "0");
+        properties.put("Hints", "False");
+        properties.put("LogLevel", "WARNING");
+    }
+
+    /**
+     * Plays a single game to its end, on the current thread (see Game.run).
+     *
+     * @param env - the game environment (with computer players only).
+     * @return - the number of sets that were collected in the game.
+     */
+    public static int play(Env env) {
+        Game game = new Game(env);
+        game.run();
+        return game.sets();
+    }
+}
@@ -1,24 +1,39 @@
 package bguspl.set;
 
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 
-public class ThreadLogger extends Thread {
+public class ThreadLogger {
 
     final Logger logger;
 
+    /**
+     * The thread that runs the target (a platform or a virtual thread, depending on the factory it was created by).
+     */
+    private final Thread thread;
+
     public ThreadLogger(Runnable target, String name, Logger logger) {
-        super(target, name);
+        this(target, name, logger, Thread::new);
+    }
+
+    public ThreadLogger(Runnable target, String name, Logger logger, ThreadFactory factory) {
+        this.thread = factory.newThread(target);
+        this.thread.setName(name);
         this.logger = logger;
     }
 
+    public String getName() {
+        return thread.getName();
+    }
+
     public void startWithLog() {
         logStart(logger, getName());
-        super.start();
+        thread.start();
     }
 
     public void joinWithLog() throws InterruptedException {
         try {
-            join();
+            thread.join();
         } finally {
             logStop(logger, getName());
         }
@@ -31,4 +46,37 @@ public class ThreadLogger extends Thread {
     public static void logStop(Logger logger, String name) {
         logger.info("thread " + name + " terminated.");
     }
+
+    /**
+     * Returns the factory of the threads of the game: virtual threads if requested and the JDK has them (Java 21 and
+     * above, looked up by reflection since the game is built for Java 8), otherwise platform threads.
+     *
+     * @param virtual - true iff virtual threads are requested.
+     * @param logger  - the logger.
+     * @return - the thread factory.
+     */
+    public static ThreadFactory threadFactory(boolean virtual, Logger logger) {
+        if (virtual) {
+            ThreadFactory factory = virtualThreadFactory();
+            if (factory != null) return factory;
+            logger.warning("virtual threads are not supported by this JDK, using platform threads.");
+        }
+        return Thread::new;
+    }
+
+    /**
+     * Returns true iff the JDK supports virtual threads.
+     */
+    public static boolean virtualThreadsAvailable() {
+        return virtualThreadFactory() != null;
+    }
+
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
 }
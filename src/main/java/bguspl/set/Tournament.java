@@ -0,0 +1,141 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.ConsoleHandler;
+import java.util.logging.Logger;
+
+/**
+ * A tournament of computer players: plays many headless games (see Simulation.headless) of every variant of a
+ * configuration, on all the cores (see GameHost), and reports for each variant the games per second, the mean game
+ * length, the sets per game, the penalty rate and how often every player won.
+ * A variant is a comma separated list of properties that override the configuration (e.g. "Rows=4,Columns=5" or
+ * "FeatureCount=3,PenaltyFreezeSeconds=1"). The games run on a virtual clock unless a variant sets VirtualClock=False.
+ * Game i of every variant is dealt with the seed RandomSeed + i, so all the variants play the same decks. With a
+ * JournalFile, variant n (from 1) keeps its journals in files with -vn before their extension, so the journals of one
+ * variant do not overwrite those of another.
+ * Usage (after mvn compile): java -cp target/classes bguspl.set.Tournament [games] [configuration file] [variant ...]
+ */
+public class Tournament {
+
+    private static final int DEFAULT_GAMES = 1000;
+
+    public static void main(String[] args) throws InterruptedException, ExecutionException {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_GAMES;
+        String configFile = args.length > 1 ? args[1] : "config.properties";
+        List<String> variants = new ArrayList<>();
+        for (int i = 2; i < args.length; ++i)
+            variants.add(args[i]);
+        if (variants.isEmpty()) variants.add("");
+
+        Logger logger = Logger.getLogger("SetTournamentLogger");
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new ConsoleHandler());
+        Properties base = Config.loadProperties(configFile, logger);
+        long seed = Long.parseLong(base.getProperty("RandomSeed", "0").trim());
+        if (seed == 0) seed = ThreadLocalRandom.current().nextLong();
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        System.out.printf("%d games per variant, seed %d, %d at a time%n", games, seed, parallelism);
+
+        for (int number = 1; number <= variants.size(); ++number) {
+            String variant = variants.get(number - 1);
+            Properties properties = new Properties();
+            properties.putAll(base);
+            properties.put("VirtualClock", "True");
+            for (String override : variant.split(",")) {
+                String[] pair = override.split("=", 2);
+                if (pair.length == 2) properties.put(pair[0].trim(), pair[1].trim());
+            }
+            String journalFile = properties.getProperty("JournalFile", "").trim();
+            if (!journalFile.isEmpty()) properties.put("JournalFile", GameJournal.suffixed(journalFile, "-v" + number));
+            Simulation.headless(properties);
+            Config config = new Config(logger, properties);
+            System.out.println("variant " + (variant.isEmpty() ? "(base)" : variant) + ":");
+            if (config.computerPlayers == 0) {
+                System.out.println("  no computer players, skipped");
+                continue;
+            }
+            play(logger, config, games, seed, parallelism).print();
+        }
+    }
+
+    /**
+     * Plays the games of a variant.
+     *
+     * @param logger      - the logger of the games.
+     * @param config      - the configuration of the variant.
+     * @param games       - the number of games.
+     * @param seed        - the seed of the first game (game i is dealt with seed + i).
+     * @param parallelism - the number of games that run at once.
+     * @return - the results of the games.
+     */
+    public static Results play(Logger logger, Config config, int games, long seed, int parallelism)
+            throws InterruptedException, ExecutionException {
+        Results results = new Results(config.players);
+        long start = System.nanoTime();
+        try (GameHost host = new GameHost(logger, config, new PackedUtilImpl(config), parallelism)) {
+            List<Future<Game>> played = new ArrayList<>(games);
+            for (int i = 0; i < games; ++i)
+                played.add(host.submit(seed + i));
+            for (Future<Game> game : played)
+                results.add(game.get());
+        }
+        results.wallNanos = System.nanoTime() - start;
+        return results;
+    }
+
+    /**
+     * The aggregate results of the games of a variant.
+     */
+    public static class Results {
+
+        public int games;
+        public long sets;
+        public long penalties;
+        public long ties;
+        public long gameMillis;
+        public long wallNanos;
+
+        /**
+         * The number of games every player won (a tie counts for every player in it).
+         */
+        public final long[] wins;
+
+        Results(int players) {
+            wins = new long[players];
+        }
+
+        void add(Game game) {
+            games++;
+            sets += game.sets();
+            penalties += game.penalties();
+            gameMillis += game.length();
+            int[] winners = game.winners();
+            if (winners.length > 1) ties++;
+            for (int winner : winners)
+                wins[winner]++;
+        }
+
+        /**
+         * @return - the share of the checked sets that were wrong (and penalized).
+         */
+        public double penaltyRate() {
+            return sets + penalties == 0 ? 0 : (double) penalties / (sets + penalties);
+        }
+
+        void print() {
+            double seconds = wallNanos / 1e9;
+            System.out.printf("  %d games in %.2f s: %.1f games/s%n", games, seconds, games / seconds);
+            System.out.printf("  mean game length %.1f s, %.1f sets/game, penalty rate %.1f%% (%.1f per game)%n",
+                    gameMillis / 1000.0 / games, (double) sets / games, 100 * penaltyRate(), (double) penalties / games);
+            StringBuilder shares = new StringBuilder();
+            for (long win : wins)
+                shares.append(String.format(" %.1f%%", 100.0 * win / games));
+            System.out.printf("  wins by player:%s (ties %.1f%%)%n", shares, 100.0 * ties / games);
+        }
+    }
+}
@@ -1,12 +1,20 @@
 package bguspl.set;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.stream.Stream;
 
 /**
  * An interface for general utilities provided for convenience.
  */
 public interface Util {
 
+    /**
+     * The number of cards from which searching for sets with a parallel stream (see streamSets) pays off.
+     */
+    int PARALLEL_SEARCH_THRESHOLD = 250;
+
     /**
      * Converts a card id to an array of features (of config.featureCount values between 0 and config.featuresSize - 1)
      *
@@ -31,6 +39,36 @@ public interface Util {
      */
     boolean testSet(int[] cards);
 
+    /**
+     * Finds the only card that completes the given cards to a legal set.
+     *
+     * The features of the missing card are determined by the features of the given cards (see cardToFeatures), and
+     * its id is read from them as a number in base config.featureSize; the set is then checked with testSet.
+     *
+     * @param cards - an array of config.featureSize - 1 card ids.
+     * @return - the id of the completing card, or -1 if there is none (or it is not determined by the given cards).
+     */
+    default int completeSet(int[] cards) {
+        int featureSize = cards.length + 1;
+        if (featureSize < 3) return -1;
+        int[][] features = cardsToFeatures(cards);
+        if (features.length != cards.length) return -1;
+        int card = 0;
+        for (int i = 0; i < features[0].length; ++i) {
+            // a bit for every value of this feature that appears in the cards
+            int seen = 0;
+            for (int[] cardFeatures : features)
+                seen |= 1 << cardFeatures[i];
+            int distinct = Integer.bitCount(seen);
+            if (distinct == 1) card = card * featureSize + features[0][i];
+            else if (distinct == cards.length) card = card * featureSize + Integer.numberOfTrailingZeros(~seen & ((1 << featureSize) - 1));
+            else return -1;
+        }
+        int[] set = Arrays.copyOf(cards, featureSize);
+        set[cards.length] = card;
+        return testSet(set) ? card : -1;
+    }
+
     /**
      * Finds and returns up to count sets in the given collection of cards.
      *
@@ -40,8 +78,57 @@ public interface Util {
      */
     List<int[]> findSets(List<Integer> deck, int count);
 
+    /**
+     * Finds sets in the given array of cards and reports each one to the consumer, until the consumer asks to stop.
+     *
+     * @param cards    - an array of card ids.
+     * @param length   - the number of cards to use (from the start of the array).
+     * @param consumer - the callback that receives the sets found.
+     * @return - the number of sets reported to the consumer.
+     */
+    default int findSets(int[] cards, int length, SetConsumer consumer) {
+        List<Integer> deck = new ArrayList<>(length);
+        for (int i = 0; i < length; ++i)
+            deck.add(cards[i]);
+        int found = 0;
+        for (int[] set : findSets(deck, Integer.MAX_VALUE)) {
+            ++found;
+            if (!consumer.accept(set)) break;
+        }
+        return found;
+    }
+
+    /**
+     * Returns a lazy stream of the legal sets in the given array of cards (in the same order as findSets).
+     * The stream is sequential, but splits evenly when made parallel.
+     *
+     * @param cards  - an array of card ids (must not be changed while the stream is in use).
+     * @param length - the number of cards to use (from the start of the array).
+     * @return - a stream of arrays, each one contains the sorted card ids of a legal set.
+     */
+    default Stream<int[]> streamSets(int[] cards, int length) {
+        List<int[]> sets = new ArrayList<>();
+        findSets(cards, length, set -> sets.add(set.clone()));
+        return sets.stream();
+    }
+
     /**
      * Spin a random number of times (for debugging/testing).
      */
     void spin();
+
+    /**
+     * A callback for the sets found by findSets.
+     */
+    interface SetConsumer {
+
+        /**
+         * Called for every set found.
+         *
+         * @param set - the sorted card ids of a legal set. The array may be reused for the next set, so it must be
+         *            copied in order to keep it.
+         * @return - true to keep searching, false to stop.
+         */
+        boolean accept(int[] set);
+    }
 }
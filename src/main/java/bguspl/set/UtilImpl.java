@@ -4,20 +4,63 @@ import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The implementation of the UserInterface interface.
  */
 public class UtilImpl implements Util {
 
-    private final Config config;
+    /**
+     * The largest feature table (in ints) that is precomputed. Larger decks compute the features arithmetically.
+     */
+    private static final int MAX_FEATURE_TABLE_SIZE = 1 << 22;
+
+    protected final Config config;
+
+    /**
+     * featureTable[card * config.featureCount + i] = feature i of card (null if the deck is too large to precompute).
+     */
+    private final int[] featureTable;
+
+    /**
+     * featureDivisors[i] = the value of feature i in the card id (config.featureSize ^ (config.featureCount - 1 - i)).
+     */
+    private final int[] featureDivisors;
 
     public UtilImpl(Config config) {
         this.config = config;
+
+        featureDivisors = new int[config.featureCount];
+        for (int i = config.featureCount - 1, divisor = 1; i >= 0; --i, divisor *= config.featureSize)
+            featureDivisors[i] = divisor;
+
+        if ((long) config.deckSize * config.featureCount <= MAX_FEATURE_TABLE_SIZE) {
+            featureTable = new int[config.deckSize * config.featureCount];
+            for (int card = 0; card < config.deckSize; ++card)
+                for (int i = 0; i < config.featureCount; ++i)
+                    featureTable[card * config.featureCount + i] = card / featureDivisors[i] % config.featureSize;
+        } else featureTable = null;
+    }
+
+    /**
+     * Returns a single feature of a card, without allocating.
+     *
+     * @param card    - the card id.
+     * @param feature - the feature index (between 0 and config.featureCount - 1).
+     * @return - the value of the feature (between 0 and config.featureSize - 1).
+     */
+    protected int feature(int card, int feature) {
+        if (featureTable != null) return featureTable[card * config.featureCount + feature];
+        return card / featureDivisors[feature] % config.featureSize;
     }
 
     private void cardToFeatures(int card, int[] features) {
+        if (featureTable != null) {
+            System.arraycopy(featureTable, card * config.featureCount, features, 0, config.featureCount);
+            return;
+        }
         for (int i = config.featureCount - 1; i >= 0; --i) {
             features[i] = card % config.featureSize;
             card /= config.featureSize;
@@ -34,30 +77,20 @@ public class UtilImpl implements Util {
     @Override
     public int[][] cardsToFeatures(int[] cards) {
         int[][] features = new int[cards.length][config.featureCount];
-        IntStream.range(0, cards.length).forEach(i -> cardToFeatures(cards[i], features[i]));
+        for (int i = 0; i < cards.length; ++i)
+            cardToFeatures(cards[i], features[i]);
         return features;
     }
 
     @Override
     public boolean testSet(int[] cards) {
-        int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
         for (int i = 0; i < config.featureCount; ++i) {
-            boolean sameSame = true, butDifferent = true;
-
-            // check if this features is sameSame in all cards
-            for (int j = 1; j < features.length; ++j)
-                if (features[0][i] != features[j][i]) {
-                    sameSame = false;
-                    break;
-                }
-
-            // check if this feature is butDifferent in all cards
-            for (int j = 1; j < features.length; ++j)
-                for (int k = j; k < features.length; ++k)
-                    if (features[j - 1][i] == features[k][i]) {
-                        butDifferent = false;
-                        break;
-                    }
+            // a bit for every value of this feature that appears in the cards
+            int seen = 0;
+            for (int card : cards)
+                seen |= 1 << feature(card, i);
+            int distinct = Integer.bitCount(seen);
+            boolean sameSame = distinct <= 1, butDifferent = distinct == cards.length;
 
             if (sameSame == butDifferent) return false;
         }
@@ -67,27 +100,150 @@ public class UtilImpl implements Util {
     @Override
     public List<int[]> findSets(List<Integer> deck, int count) {
         LinkedList<int[]> sets = new LinkedList<>();
-        int n = deck.size();
+        int[] cards = new int[deck.size()];
+        for (int i = 0; i < cards.length; ++i)
+            cards[i] = deck.get(i);
+        findSets(cards, cards.length, set -> {
+            sets.add(set.clone());
+            return sets.size() < count;
+        });
+        return sets;
+    }
+
+    @Override
+    public int findSets(int[] cards, int length, SetConsumer consumer) {
+        int r = config.featureSize;
+        // with less than 3 cards per set, the last card is not determined by the others
+        if (r < 3) return findSetsByCombinations(cards, length, consumer);
+
+        int m = r - 1;
+        if (length < r) return 0;
+
+        // cardToIndex[card] = the position of the card in the array (-1 if the card is not in the array)
+        int[] cardToIndex = new int[config.deckSize];
+        Arrays.fill(cardToIndex, -1);
+        for (int i = 0; i < length; ++i)
+            cardToIndex[cards[i]] = i;
+
+        int[] combination = new int[m];
+        int[] prefix = new int[m];
+        int[] set = new int[r];
+        // with more than 2 cards to complete, partial sets that cannot become legal are pruned
+        int[][] seen = m > 2 ? new int[m - 1][config.featureCount] : null;
+        int found = 0;
+        int depth = 0;
+
+        // grows the first r - 1 cards of a set one by one (the last card must come after them in the array)
+        while (depth >= 0) {
+            int i = combination[depth];
+            if (i >= length - (m - depth)) {
+                // no room left for the rest of the set at this depth, backtrack
+                if (--depth >= 0) combination[depth]++;
+                continue;
+            }
+            prefix[depth] = cards[i];
+
+            if (depth < m - 1) {
+                if (seen == null || extendPrefix(seen, depth, prefix[depth])) combination[++depth] = i + 1;
+                else combination[depth]++;
+                continue;
+            }
+
+            int last = completeSet(prefix, m);
+            if (last != -1 && cardToIndex[last] > i) {
+                System.arraycopy(prefix, 0, set, 0, m);
+                set[m] = last;
+                Arrays.sort(set);
+                ++found;
+                if (!consumer.accept(set)) return found;
+            }
+            combination[depth]++;
+        }
+        return found;
+    }
+
+    /**
+     * Adds a card to a partial set and checks that the partial set can still become a legal set, i.e. that every
+     * feature is still either the same in all the cards or different in all the cards.
+     *
+     * @param seen  - seen[d][i] = a bit for every value of feature i in the first d + 1 cards of the partial set.
+     * @param depth - the position of the new card in the partial set (seen[depth] is filled from seen[depth - 1]).
+     * @param card  - the card id.
+     * @return - true iff the partial set (with the new card) can still be completed to a legal set.
+     */
+    protected boolean extendPrefix(int[][] seen, int depth, int card) {
+        for (int i = 0; i < config.featureCount; ++i) {
+            int mask = (depth == 0 ? 0 : seen[depth - 1][i]) | 1 << feature(card, i);
+            seen[depth][i] = mask;
+            int distinct = Integer.bitCount(mask);
+            if (distinct != 1 && distinct != depth + 1) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public Stream<int[]> streamSets(int[] cards, int length) {
+        return StreamSupport.stream(new SetSpliterator(this, config, cards, length), false);
+    }
+
+    @Override
+    public int completeSet(int[] cards) {
+        if (config.featureSize < 3 || cards.length != config.featureSize - 1) return -1;
+        return completeSet(cards, cards.length);
+    }
+
+    /**
+     * Finds the only card that completes the given cards to a legal set.
+     * Each feature of the missing card is determined by the others: if they are all the same, it must be the same
+     * value, and if they are all different, it must be the one value that is missing.
+     *
+     * @param cards - the first m cards of the set (m = config.featureSize - 1).
+     * @param m     - the number of cards to complete.
+     * @return - the id of the completing card, or -1 if the cards cannot be completed to a legal set.
+     */
+    protected int completeSet(int[] cards, int m) {
+        int all = (1 << config.featureSize) - 1;
+        int card = 0;
+        for (int i = 0; i < config.featureCount; ++i) {
+            int seen = 0;
+            for (int j = 0; j < m; ++j)
+                seen |= 1 << feature(cards[j], i);
+            int distinct = Integer.bitCount(seen);
+            if (distinct == 1) card = card * config.featureSize + feature(cards[0], i);
+            else if (distinct == m) card = card * config.featureSize + Integer.numberOfTrailingZeros(~seen & all);
+            else return -1;
+        }
+        return card;
+    }
+
+    /**
+     * Finds sets by testing every combination of config.featureSize cards in the array.
+     */
+    private int findSetsByCombinations(int[] cards, int length, SetConsumer consumer) {
         int r = config.featureSize;
         int[] combination = new int[r];
+        int[] set = new int[r];
+        int found = 0;
 
         for (int i = 0; i < r; ++i)
             combination[i] = i;
 
-        while (combination[r - 1] < deck.size()) {
-            int[] cards = Arrays.stream(combination).map(deck::get).sorted().toArray();
-            if (testSet(cards)) {
-                sets.add(cards);
-                if (sets.size() >= count) return sets;
+        while (combination[r - 1] < length) {
+            for (int i = 0; i < r; ++i)
+                set[i] = cards[combination[i]];
+            Arrays.sort(set);
+            if (testSet(set)) {
+                ++found;
+                if (!consumer.accept(set)) return found;
             }
 
             // generate next combination in lexicographic order
             int t = r - 1;
-            while (t != 0 && combination[t] == n - r + t) --t;
+            while (t != 0 && combination[t] == length - r + t) --t;
             combination[t]++;
             for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
         }
-        return sets;
+        return found;
     }
 
     public void spin() {
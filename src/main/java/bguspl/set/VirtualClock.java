@@ -0,0 +1,157 @@
+package bguspl.set;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A game clock for discrete-event simulation: the time stands still while any of its participants (the threads of the
+ * game, see register) runs, and as soon as all of them wait on the clock, it jumps to the earliest time one of them
+ * waits for and wakes it. So a game makes the same decisions as with a real clock (as long as the threads only wait
+ * on the clock), but all the freezes, timeouts and delays take no time at all.
+ */
+public class VirtualClock implements GameClock {
+
+    /**
+     * The waiting state of a participant (guarded by lock, except for parked, which the participant polls).
+     */
+    private static class Participant {
+        volatile boolean parked;
+        long deadline;
+        boolean wakeable;
+        boolean permit;
+    }
+
+    /**
+     * Guards the participants and running. A lock rather than synchronized, so a virtual thread that waits for it does
+     * not pin its carrier thread (on Java 21).
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Map<Thread, Participant> participants = new HashMap<>();
+
+    /**
+     * The number of participants that do not wait on the clock.
+     */
+    private int running;
+
+    private volatile long now;
+
+    @Override
+    public long millis() {
+        return now;
+    }
+
+    @Override
+    public void park(Object blocker) {
+        await(blocker, Long.MAX_VALUE, true);
+    }
+
+    @Override
+    public void parkUntil(Object blocker, long deadline) {
+        await(blocker, deadline, true);
+    }
+
+    @Override
+    public void unpark(Thread thread) {
+        lock.lock();
+        try {
+            Participant participant = participants.get(thread);
+            if (participant == null) LockSupport.unpark(thread);
+            else if (participant.parked && participant.wakeable) wake(thread, participant);
+            else participant.permit = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void sleep(long millis) {
+        long deadline = now + millis;
+        while (now < deadline)
+            await(this, deadline, false);
+    }
+
+    /**
+     * Checks every millisecond of the clock if the thread terminated (the joining thread waits on the clock meanwhile,
+     * so the time passes for the thread it waits for).
+     */
+    @Override
+    public void join(Thread thread) {
+        while (thread.isAlive())
+            await(thread, now + 1, false);
+    }
+
+    @Override
+    public boolean virtual() {
+        return true;
+    }
+
+    @Override
+    public void register(Thread thread) {
+        lock.lock();
+        try {
+            if (participants.put(thread, new Participant()) == null) ++running;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void deregister(Thread thread) {
+        lock.lock();
+        try {
+            Participant participant = participants.remove(thread);
+            if (participant != null && !participant.parked && --running == 0) advance();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits on the clock until a time (or until unparked, if wakeable). Called by a participant only.
+     */
+    private void await(Object blocker, long deadline, boolean wakeable) {
+        Participant participant;
+        lock.lock();
+        try {
+            participant = participants.get(Thread.currentThread());
+            if (participant == null)
+                throw new IllegalStateException(Thread.currentThread().getName() + " is not a participant of the clock");
+            if (wakeable && participant.permit) {
+                participant.permit = false;
+                return;
+            }
+            if (deadline <= now) return;
+            participant.deadline = deadline;
+            participant.wakeable = wakeable;
+            participant.parked = true;
+            if (--running == 0) advance();
+        } finally {
+            lock.unlock();
+        }
+        while (participant.parked)
+            LockSupport.park(blocker);
+    }
+
+    /**
+     * Called (under lock) when no participant runs: moves the time to the earliest deadline and wakes the participants that wait
+     * for it. If none of them waits for a time, the time stays (they wait for each other, or the game is over).
+     */
+    private void advance() {
+        long next = Long.MAX_VALUE;
+        for (Participant participant : participants.values())
+            if (participant.parked && participant.deadline < next) next = participant.deadline;
+        if (next == Long.MAX_VALUE) return;
+        now = next;
+        for (Map.Entry<Thread, Participant> entry : participants.entrySet())
+            if (entry.getValue().parked && entry.getValue().deadline <= next) wake(entry.getKey(), entry.getValue());
+    }
+
+    private void wake(Thread thread, Participant participant) {
+        participant.parked = false;
+        ++running;
+        LockSupport.unpark(thread);
+    }
+}
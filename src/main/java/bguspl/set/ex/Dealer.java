@@ -1,16 +1,14 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.GameJournal;
+import bguspl.set.SetCatalog;
 import bguspl.set.ThreadLogger;
-import bguspl.set.Util;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.Random;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -20,6 +18,16 @@ import java.util.stream.IntStream;
  */
 public class Dealer implements Runnable {
 
+    /**
+     * The number of milliseconds in a second (the resolution of the displayed times).
+     */
+    private static final long SECOND_MILLIS = 1000;
+
+    /**
+     * The resolution of the displayed countdown (in milliseconds) while the turn timeout warning is shown.
+     */
+    private static final long WARNING_TICK_MILLIS = 10;
+
     /**
      * The game environment object.
      */
@@ -36,6 +44,16 @@ public class Dealer implements Runnable {
      */
     private final List<Integer> deck;
 
+    /**
+     * The source of the shuffles of the deck and of the order of the slots (seeded with env.seed).
+     */
+    private final Random random;
+
+    /**
+     * The winners of the game, as announced at its end (empty until then).
+     */
+    private int[] winners = new int[0];
+
     /**
      * True iff game should be terminated.
      */
@@ -47,26 +65,45 @@ public class Dealer implements Runnable {
     private long reshuffleTime = Long.MAX_VALUE;
 
     /**
-     * A queue that holds players sets that needs to be checked for legality, and does it fairly (FIFO)
+     * A queue that holds players sets that needs to be checked for legality, and does it fairly (FIFO).
+     */
+    private final SetSubmissionRing setsToCheck;
+
+    /**
+     * The set taken from setsToCheck that is being checked (reused for every set).
      */
-    private Queue<PlayerSet> setsToCheck;
+    private final PlayerSet setToCheck;
+
+    /**
+     * The number of sets checked so far, and the total time (in nanoseconds) they waited to be checked.
+     */
+    private long checkedSets = 0;
+    private long checkWaitNanos = 0;
 
     /**
      * Saves the time of the last action (reshuffle of set collected)
      */
     private long lastActionTime = 0;
 
-    private Thread dealerThread;
+    private volatile Thread dealerThread;
+
+    /**
+     * The sets of the deck that can still be collected in this game (i.e. none of their cards has been collected).
+     */
+    private final SetCatalog.Tracker completableSets;
 
     public Dealer(Env env, Table table, Player[] players) {
         this.env = env;
         this.table = table;
         this.players = players;
         deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
-        this.setsToCheck = new ConcurrentLinkedQueue<PlayerSet>();
+        this.random = new Random(env.seed);
+        this.setsToCheck = new SetSubmissionRing(players.length, env.config.featureSize);
+        this.setToCheck = new PlayerSet(env.config.featureSize);
+        this.completableSets = (env.catalog != null ? env.catalog : SetCatalog.build(env.config, env.util)).newTracker();
         //if the game mode is regular, set the first reshuffle time.
         if (env.config.turnTimeoutMillis>0){
-            reshuffleTime = System.currentTimeMillis()+env.config.turnTimeoutMillis;
+            reshuffleTime = env.clock.millis()+env.config.turnTimeoutMillis;
         }
     }
 
@@ -79,11 +116,11 @@ public class Dealer implements Runnable {
         env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
         //creating and starting the players threads.
         for (Player p : players){
-            ThreadLogger playerThread = new ThreadLogger(p, "player "+ p.id, env.logger);
+            ThreadLogger playerThread = new ThreadLogger(p, "player "+ p.id, env.logger, env.threadFactory);
             playerThread.startWithLog();
         }
         //shuffling the deck for the first time
-        Collections.shuffle(deck);
+        Collections.shuffle(deck, random);
         while (!shouldFinish()) {
             placeCardsOnTable();
             updateTimerDisplay(true);
@@ -96,6 +133,9 @@ public class Dealer implements Runnable {
             players[i].terminate();
         }
         announceWinners();
+        env.journal.close();
+        env.logger.info("table lock usage: " + table.lockStats());
+        env.logger.info("sets checked: " + checkedSets + " (mean wait " + (checkedSets == 0 ? 0 : checkWaitNanos / checkedSets / 1000) + " us)");
         env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
     }
 
@@ -103,11 +143,13 @@ public class Dealer implements Runnable {
      * The inner loop of the dealer thread that runs as long as the countdown did not time out.
      */
     private void timerLoop() {
-        while (!terminate && System.currentTimeMillis() < reshuffleTime) {
+        while (!terminate && env.clock.millis() < reshuffleTime && completableSets.completableSets() > 0) {
             sleepUntilWokenOrTimeout();
             updateTimerDisplay(false);
             removeCardsFromTable();
             placeCardsOnTable();
+            //the new cards may change whether there is a set on the table (it was checked before they were placed).
+            updateReshuffleTime();
         }
     }
 
@@ -116,6 +158,7 @@ public class Dealer implements Runnable {
      */
     public void terminate() {
         this.terminate = true;
+        wakeDealerThread();
     }
 
     /**
@@ -124,51 +167,73 @@ public class Dealer implements Runnable {
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        return terminate || env.util.findSets(deck, 1).size() == 0;
+        return terminate || completableSets.completableSets() == 0;
     }
 
     /**
      * Checks cards should be removed from the table and removes them.
+     * All the sets that are waiting are checked in one batch (in the order they were sent). Each set is checked against
+     * the slot versions it was sent with, so a set whose slots changed since (even if the same cards are back in them)
+     * is dropped, without a point or a penalty. The check itself needs no lock, the table write lock is only taken
+     * (once for the whole batch) when the first legal set is collected.
      */
     private void removeCardsFromTable() {
-        // gets the set to be checked
-        PlayerSet setToCheck = this.setsToCheck.poll();
-        if (setToCheck != null){
+        if (setsToCheck.isEmpty()){
+            return;
+        }
+        boolean setCollected = false;
+        long stamp = 0;
+        while (this.setsToCheck.poll(setToCheck)){
+            checkedSets++;
+            checkWaitNanos += System.nanoTime() - setToCheck.getSubmitted();
+            Player player = players[setToCheck.getPlayerId()];
             int[] slotSet = setToCheck.getSetSlots();
             int[] cardsSet = setToCheck.getSetCards();
-            // checking the validity of the set (if the cards that were chosen by the player are the same cards that are currently on the table.)
+            int[] versionsSet = setToCheck.getSetVersions();
+            // checking the validity of the set (if none of the slots that were chosen by the player changed since.)
             boolean isValidSet = true;
             for (int i = 0 ; i < slotSet.length ; i++){
-                if (slotSet[i]<0 || cardsSet[i] != this.table.slotToCard[slotSet[i]]){
+                if (slotSet[i]<0 || Table.cellVersion(this.table.slotCell(slotSet[i])) != versionsSet[i]){
                     isValidSet = false;
                 }
             }
-            //if the set is valid
-            if (isValidSet){
-                //if the set is a legal set
-                if (env.util.testSet(cardsSet)){
-                    players[setToCheck.getPlayerId()].point();
-                    //removes the cards and tokens from the set`s slots.
-                    this.table.beforeWrite();
-                    for (int slot : slotSet){
-                        //for each player, tries to remove his token from slot slot. 
-                        for (Player p : players) {
-                            p.waitingForDealerCheck = false;
-                            p.removePlayerToken(slot);
-                        }
-                        this.table.removeCard(slot);
-                    }
-                    this.table.afterWrite();
-                    //if a set was found, update the timer
-                    this.updateTimerDisplay(true);
+            //if the set is no longer on the table, the player is released without a point or a penalty.
+            if (!isValidSet){
+                env.journal.record(GameJournal.DROP, player.id, 0);
+                player.release();
+            }
+            //if the set is a legal set
+            else if (env.util.testSet(cardsSet)){
+                if (stamp == 0){
+                    stamp = this.table.beforeWrite();
+                }
+                player.point();
+                //removes the cards and tokens from the set`s slots.
+                for (int card : cardsSet){
+                    completableSets.removeCard(card);
                 }
-                else{
-                    //if the player selected an incorrect set, gives him a penalty and removes his tokens.
-                    players[setToCheck.getPlayerId()].penalty();
-                    players[setToCheck.getPlayerId()].waitingForDealerCheck = false;
+                //removes the tokens of all the players from the set`s slots (in one pass) and releases them.
+                this.table.removeTokens(slotSet);
+                for (Player p : players) {
+                    p.release();
                 }
+                for (int slot : slotSet){
+                    this.table.removeCard(slot);
+                }
+                setCollected = true;
+            }
+            else{
+                //if the player selected an incorrect set, gives him a penalty and removes his tokens.
+                player.penalty();
+                player.release();
             }
         }
+        //if a set was found, update the timer (once for the whole batch)
+        if (setCollected){
+            this.table.afterWrite(stamp);
+            this.analyzeTable();
+            this.updateTimerDisplay(true);
+        }
     }
 
     /**
@@ -180,23 +245,30 @@ public class Dealer implements Runnable {
         for (int i = 0 ; i < env.config.tableSize ; i++){
             slotsList.add(i);
         }
-        Collections.shuffle(slotsList);
+        Collections.shuffle(slotsList, random);
         //indicates if the table has been changed in this turn. (for hints update)
         boolean tableHasBeenChanged = false;
         //run on each slot and if the slot is empty and there is a card in the deck, place the card from the deck to the slot.
         for (Integer i : slotsList) {
             if (table.slotToCard[i]==-1 && !deck.isEmpty()){
-                this.table.beforeWrite();
+                long stamp = this.table.beforeWrite();
                 table.placeCard(deck.remove(0), i);
-                this.table.afterWrite();
+                this.table.afterWrite(stamp);
                 //mark that the table has been changed.
                 tableHasBeenChanged = true;
                 //every card, update the freeze timer of the players.
                 for (Player player : players) {
-                    env.ui.setFreeze(player.id, player.timeToFreeze-System.currentTimeMillis());
+                    env.ui.setFreeze(player.id, player.timeToFreeze-env.clock.millis());
                 }
             }
         }
+        //analyze the new table and wake the computer players that are waiting for cards on the table.
+        if (tableHasBeenChanged){
+            this.analyzeTable();
+            for (Player player : players) {
+                player.wakeComputer();
+            }
+        }
         //if the table has been changed and hints are enabled
         if (tableHasBeenChanged && env.config.hints){
            this.table.hints(); 
@@ -205,15 +277,60 @@ public class Dealer implements Runnable {
     }
 
     /**
-     * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
+     * Sleep until the next time the display needs to change or until the thread is awakened for some purpose.
      */
     private void sleepUntilWokenOrTimeout() {
-        if (setsToCheck.isEmpty()){
-            try {
-                this.dealerThread.sleep(1);
-            } catch (InterruptedException e) {}
+        if (!setsToCheck.isEmpty() || terminate) return;
+        long now = env.clock.millis();
+        long wakeTime = nextDisplayChange(now);
+        //if nothing is going to change on its own, sleep until a set is sent (or the game is terminated).
+        if (wakeTime == Long.MAX_VALUE) {
+            env.clock.park(this);
+        } else if (wakeTime > now) {
+            env.clock.parkUntil(this, wakeTime);
         }
-        
+    }
+
+    /**
+     * Computes the next time something shown on the display changes: the countdown or elapsed time (including the
+     * reshuffle time and the start of the warning), or the freeze time of a player.
+     *
+     * @param now - the current time.
+     * @return the time of the next change (Long.MAX_VALUE if nothing changes on its own).
+     */
+    private long nextDisplayChange(long now) {
+        long next = Long.MAX_VALUE;
+        //GAME MODES: 1 and 3, if there is no set on the table, the dealer reshuffles right away.
+        if (env.config.turnTimeoutMillis<=0 && table.setCount() == 0){
+            return now;
+        }
+        //GAME MODE: 2 (regular)
+        if (env.config.turnTimeoutMillis>0){
+            long warningTime = reshuffleTime - env.config.turnTimeoutWarningMillis;
+            boolean warn = now > warningTime;
+            next = Math.min(reshuffleTime, nextTick(reshuffleTime, now, warn ? WARNING_TICK_MILLIS : SECOND_MILLIS));
+            if (!warn){
+                next = Math.min(next, warningTime + 1);
+            }
+        }
+        //GAME MODE: 3
+        else if (env.config.turnTimeoutMillis==0){
+            next = lastActionTime + ((now - lastActionTime) / SECOND_MILLIS + 1) * SECOND_MILLIS;
+        }
+        //the freeze time of each player is displayed in seconds, until it is over.
+        for (Player player : players) {
+            if (player.timeToFreeze >= now){
+                next = Math.min(next, nextTick(player.timeToFreeze, now, SECOND_MILLIS));
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Computes the next time a countdown to target, displayed in units, changes.
+     */
+    private static long nextTick(long target, long now, long unit) {
+        return target - (target - now) / unit * unit + 1;
     }
 
     /**
@@ -222,56 +339,59 @@ public class Dealer implements Runnable {
     private void updateTimerDisplay(boolean reset) {
         //GAME MODE: 1
         if (env.config.turnTimeoutMillis<0){
-            //creating a list of the card that are on the table.
-            List<Integer> integerList1 = Arrays.stream(this.table.slotToCard)
-                                            .filter(num -> num != -1)
-                                            .collect(Collectors.toList());
-            //if there aren't sets on the table, reshuffle.
-            if (env.util.findSets(integerList1, 1).isEmpty()){
-                reshuffleTime = System.currentTimeMillis()-1;
-            }
-            else{
-                reshuffleTime = Long.MAX_VALUE;
-            }
+            updateReshuffleTime();
         }
 
         //GAME MODE: 2 (regular)
         else if (env.config.turnTimeoutMillis>0){
             //if the timer needs to be reseted
             if (reset){
-                reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
+                reshuffleTime = env.clock.millis() + env.config.turnTimeoutMillis;
             }
-            long timeleft = reshuffleTime-System.currentTimeMillis();
+            long timeleft = reshuffleTime-env.clock.millis();
             //ensuring the timer wont display negative numbers.
             if (timeleft<0){
                 timeleft = 0;
             }
             //updating the timer
-            env.ui.setCountdown(timeleft, reshuffleTime-System.currentTimeMillis()<env.config.turnTimeoutWarningMillis);
+            env.ui.setCountdown(timeleft, reshuffleTime-env.clock.millis()<env.config.turnTimeoutWarningMillis);
         }
 
         //GAME MODE: 3
         else if (env.config.turnTimeoutMillis==0){
             //if an action was commited, reset the timer.
             if (reset){
-                lastActionTime = System.currentTimeMillis();
+                lastActionTime = env.clock.millis();
             }
-            env.ui.setCountdown(System.currentTimeMillis()-lastActionTime, false);
-            //creating a list of the card that are on the table.
-            List<Integer> integerList1 = Arrays.stream(this.table.slotToCard)
-                                            .filter(num -> num != -1)
-                                            .collect(Collectors.toList());
-            //if there aren't sets on the table, reshuffle.
-            if (env.util.findSets(integerList1, 1).isEmpty()){
-                reshuffleTime = System.currentTimeMillis()-1;
+            env.ui.setCountdown(env.clock.millis()-lastActionTime, false);
+            updateReshuffleTime();
+        }
+        //updating the freezing time of each player.
+        for (Player player : players) {
+            env.ui.setFreeze(player.id, player.timeToFreeze-env.clock.millis());
+        }
+    }
+
+    /**
+     * In the game modes with no countdown (1 and 3), reshuffles as soon as there aren't sets on the table.
+     */
+    private void updateReshuffleTime() {
+        if (env.config.turnTimeoutMillis<=0){
+            if (table.setCount() == 0){
+                reshuffleTime = env.clock.millis()-1;
             }
             else{
                 reshuffleTime = Long.MAX_VALUE;
             }
         }
-        //updating the freezing time of each player.
-        for (Player player : players) {
-            env.ui.setFreeze(player.id, player.timeToFreeze-System.currentTimeMillis());
+    }
+
+    /**
+     * Publishes the legal sets on the table to the computer players, once for all of them (only if they use it).
+     */
+    private void analyzeTable() {
+        if (env.config.computerPlayers > 0 && env.config.computerSkill > 0){
+            this.table.analyze();
         }
     }
 
@@ -284,13 +404,14 @@ public class Dealer implements Runnable {
         for (int i = 0 ; i < env.config.tableSize ; i++){
             slotsList.add(i);
         }
-        Collections.shuffle(slotsList);
+        Collections.shuffle(slotsList, random);
 
         //remove all of the tokens of the players from the table
-        this.table.beforeWrite();
+        long stamp = this.table.beforeWrite();
+        env.journal.record(GameJournal.RESHUFFLE, 0, 0);
+        this.table.removeAllTokens();
         for (Player p : players) {
-            p.waitingForDealerCheck=false;
-            p.removeAllPlayerTokens();
+            p.release();
         }
         
         //for each card, removes the card from the table and adds it to the deck
@@ -301,12 +422,13 @@ public class Dealer implements Runnable {
             }
             //every card, update the players freeze timer
             for (Player player : players) {
-                env.ui.setFreeze(player.id, player.timeToFreeze-System.currentTimeMillis());
+                env.ui.setFreeze(player.id, player.timeToFreeze-env.clock.millis());
             }
         }
-        this.table.afterWrite();
+        this.table.afterWrite(stamp);
+        this.analyzeTable();
         // after the cards have been collected, shuffle the deck
-        Collections.shuffle(deck);
+        Collections.shuffle(deck, random);
     }
 
     /**
@@ -328,22 +450,46 @@ public class Dealer implements Runnable {
             }
         }
         //announces the winners.
-        env.ui.announceWinner((winnersList.stream().mapToInt(Integer::intValue)).toArray());
+        this.winners = (winnersList.stream().mapToInt(Integer::intValue)).toArray();
+        for (int winner : this.winners) {
+            env.journal.record(GameJournal.WINNER, winner, maxScore);
+        }
+        env.ui.announceWinner(this.winners);
     }
 
     /**
-     * Adding a player set to the dealer queue for checking.
+     * @return - the ids of the players who won the game (empty until the game is over).
      */
-    public void addSetToCheck (PlayerSet setToCheck){
-        setsToCheck.add(setToCheck);
+    public int[] winners() {
+        return this.winners;
+    }
+
+    /**
+     * Adding a player set to the dealer queue for checking, and waking the dealer thread to check it.
+     * The arrays are copied, so the player can reuse them.
+     *
+     * @param player - the player id.
+     * @param slots  - the slots of the set.
+     * @param cells  - the cell of every slot of the set, as the player saw it (see Table.slotCell).
+     */
+    public void addSetToCheck (int player, int[] slots, long[] cells){
+        // the ring has room for a set of every player, so this only spins if a player that was released while its
+        // set was waiting adds another one, until the dealer (woken here) checks a set. Never called under the table
+        // lock, since the dealer may need the write lock to empty the ring.
+        while (!setsToCheck.offer(player, System.nanoTime(), slots, cells)){
+            wakeDealerThread();
+            Thread.yield();
+        }
+        wakeDealerThread();
     }
 
     /**
-     * Waking the dealer thread.
+     * Waking the dealer thread (if it is sleeping, otherwise its next sleep returns immediately).
      */
     protected void wakeDealerThread (){
-        if (this.dealerThread != null){
-            this.dealerThread.interrupt();
+        Thread thread = this.dealerThread;
+        if (thread != null){
+            env.clock.unpark(thread);
         }
     }
 }
@@ -2,10 +2,11 @@ package bguspl.set.ex;
 
 import java.util.LinkedList;
 import java.util.Queue;
-import java.util.Random;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
 
 import bguspl.set.Env;
+import bguspl.set.GameJournal;
 
 /**
  * This class manages the players' threads and data
@@ -38,7 +39,7 @@ public class Player implements Runnable {
     /**
      * The thread of the AI (computer) player (an additional thread used to generate key presses).
      */
-    private Thread aiThread;
+    private volatile Thread aiThread;
 
     /**
      * True iff the player is human (not a computer player).
@@ -55,11 +56,12 @@ public class Player implements Runnable {
      */
     private int score;
 
-    //our code
     /**
-     * tokensLeft = the number of tokens player playerId is not using right now.
+     * The number of penalties the player got.
      */
-    protected int tokensLeft; 
+    private int penalties;
+
+    //our code
 
     /**
      * blocking queue that holds incoming actions. the queue is of capacity 3
@@ -79,6 +81,27 @@ public class Player implements Runnable {
 
     private Dealer dealer;
 
+    /**
+     * The table analysis the AI planned its moves for, the set in it the AI goes for (-1 if none) and a reusable buffer
+     * for its tokens (used by the AI only).
+     */
+    private TableAnalysis plannedAnalysis;
+    private int plannedSet = -1;
+    private final int[] aiTokens;
+
+    /**
+     * The number of key presses the AI thread queued (written by the AI thread only), and the number of them the player
+     * thread has applied to the table (written by the player thread only).
+     */
+    private int aiPresses;
+    private volatile int appliedAiPresses;
+
+    /**
+     * Reusable buffers for the slots and slot cells of the set the player submits (used by the player thread only).
+     */
+    private final int[] setSlots;
+    private final long[] setCells;
+
     /**
      * The class constructor.
      *
@@ -95,8 +118,10 @@ public class Player implements Runnable {
         this.human = human;
 
         this.dealer = dealer;
-        this.tokensLeft = env.config.featureSize;
-        this.incomingActionsQueue = new PlayerInputQueue(env.config.featureSize);
+        this.incomingActionsQueue = new PlayerInputQueue(env.config.featureSize, env.clock);
+        this.setSlots = new int[env.config.featureSize];
+        this.setCells = new long[env.config.featureSize];
+        this.aiTokens = new int[env.config.featureSize];
     }
 
     /**
@@ -106,54 +131,205 @@ public class Player implements Runnable {
     public void run() {
         playerThread = Thread.currentThread();
         env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
-        if (!human) createArtificialIntelligence();
-        while (!terminate) {
-            // TODO implement main player loop
-            //taking an action from the actions queue.
-            Integer slot = incomingActionsQueue.take();
-            //if the game is done, exit the loop.
-            if (terminate){
-                break;
-            }
-            //if there is a token on the slot -> remove the token
-            if (this.table.playersTokens[this.id][slot]){
-                this.removePlayerToken(slot);
-            }
-
-            else if (tokensLeft>0){
-                this.table.beforeRead();
-                this.placePlayerToken(slot);
-                // if the third token was placed, the newly formed set is sent to the dealer for checking.
-                if (tokensLeft==0 && !this.waitingForDealerCheck){
-                    this.waitingForDealerCheck = true;
-                    dealer.addSetToCheck(this.getSet());
-                    dealer.wakeDealerThread();
+        if (!human && env.config.fusedComputerPlayers){
+            // the AI decides and acts on the player thread itself, with no AI thread and no actions queue in between.
+            aiThread = playerThread;
+            while (!terminate) {
+                int slot = this.nextKeyPress();
+                if (slot != -1){
+                    this.keyAction(slot);
+                }
+            }
+        }
+        else{
+            if (!human) createArtificialIntelligence();
+            while (!terminate) {
+                //taking an action from the actions queue.
+                int slot = incomingActionsQueue.take();
+                //if the game is done, exit the loop.
+                if (terminate){
+                    break;
+                }
+                this.keyAction(slot);
+                //the table now shows the press, so the AI can choose its next one.
+                if (!human){
+                    this.appliedAiPresses++;
+                    this.wakeComputer();
                 }
-                this.table.afterRead();    
             }
+            if (!human) try { env.clock.join(aiThread); } catch (InterruptedException ignored) {}
         }
-        if (!human) try { aiThread.join(); } catch (InterruptedException ignored) {}
         env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
     }
 
     /**
-     * Creates an additional thread for an AI (computer) player. The main loop of this thread repeatedly generates
-     * key presses. If the queue of key presses is full, the thread waits until it is not full.
+     * Performs the action of a key press: toggles the player's token in the slot, and sends the set to the dealer
+     * when the last token is placed.
+     *
+     * @param slot - the slot corresponding to the key pressed.
+     */
+    private void keyAction(int slot) {
+        //if there is a token on the slot -> remove the token (under the read lock, so it is journaled in order with
+        //the tokens the dealer removes)
+        if (this.table.hasToken(this.id, slot)){
+            long stamp = this.table.beforeRead();
+            this.removePlayerToken(slot);
+            this.table.afterRead(stamp);
+        }
+
+        else if (tokensLeft()>0){
+            boolean submit = false;
+            long stamp = this.table.beforeRead();
+            this.placePlayerToken(slot);
+            // if the third token was placed, the newly formed set is sent to the dealer for checking.
+            if (tokensLeft()==0 && !this.waitingForDealerCheck){
+                this.waitingForDealerCheck = true;
+                this.collectSet();
+                env.journal.record(GameJournal.SUBMIT, this.id, 0);
+                submit = true;
+            }
+            this.table.afterRead(stamp);
+            // sent after the read lock is released: if the queue of the dealer is full, the player waits for the
+            // dealer, and the dealer may need the write lock to empty it.
+            if (submit){
+                dealer.addSetToCheck(this.id, setSlots, setCells);
+            }
+        }
+    }
+
+    /**
+     * Creates an additional thread for an AI (computer) player. The main loop of this thread waits until a key press
+     * can take effect (see nextKeyPress), then generates it. If the queue of key presses is full, the thread waits
+     * until it is not full.
      */
     private void createArtificialIntelligence() {
         // note: this is a very, very smart AI (!)
-        aiThread = new Thread(() -> {
+        Thread thread = env.threadFactory.newThread(() -> {
             env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
             while (!terminate) {
-                //Generates a random integer between 0 (inclusive) and tableSize (exclusive)
-                Random random = new Random();
-                this.keyPressed(random.nextInt(env.config.tableSize)); 
+                int slot = this.nextKeyPress();
+                if (slot != -1){
+                    this.keyPressed(slot);
+                }
             }
             env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
-        }, "computer-" + id);
+        });
+        thread.setName("computer-" + id);
+        aiThread = thread;
         aiThread.start();
     }
 
+    /**
+     * Waits until a key press of the AI can take effect, and for the reaction delay after that.
+     * The AI thread is parked meanwhile: until the player thread applied its previous press, until the freeze ends, or
+     * until the dealer wakes it (see wakeComputer) with a verdict on its set or new cards on the table. The AI chooses
+     * its press only once its previous presses are on the table, so it never presses a slot twice by mistake (which
+     * would remove the token it just placed).
+     *
+     * @return - the slot to press (see chooseSlot), or -1 if the game was terminated.
+     */
+    private int nextKeyPress() {
+        boolean reacted = env.config.computerReactionMillis <= 0;
+        while (!terminate) {
+            long now = env.clock.millis();
+            if (this.appliedAiPresses != this.aiPresses){
+                env.clock.park(this);
+                continue;
+            }
+            if (this.waitingForDealerCheck){
+                env.clock.park(this);
+                continue;
+            }
+            if (this.timeToFreeze >= now){
+                env.clock.parkUntil(this, this.timeToFreeze + 1);
+                continue;
+            }
+            int slot = this.chooseSlot();
+            if (slot == -1){
+                env.clock.park(this);
+                continue;
+            }
+            if (reacted){
+                return slot;
+            }
+            // waits for the whole delay (an event in between does not cut it short), then checks again
+            long reactionTime = now + env.config.computerReactionMillis;
+            while (!terminate && (now = env.clock.millis()) < reactionTime){
+                env.clock.parkUntil(this, reactionTime);
+            }
+            reacted = true;
+        }
+        return -1;
+    }
+
+    /**
+     * Chooses the slot the AI presses next. Every time the table analysis changes, the AI goes for one of the legal
+     * sets in it with probability config.computerSkill: it first removes its tokens from other slots, then places
+     * tokens on the slots of the set. Otherwise (or once there is nothing left to do for the set) it presses a random
+     * slot that has a card.
+     *
+     * @return - the slot, or -1 if there are no cards on the table.
+     */
+    private int chooseSlot() {
+        if (env.config.computerSkill > 0){
+            TableAnalysis analysis = this.table.analysis();
+            if (analysis != this.plannedAnalysis){
+                this.plannedAnalysis = analysis;
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                this.plannedSet = analysis.setCount() > 0 && random.nextDouble() < env.config.computerSkill
+                        ? random.nextInt(analysis.setCount()) : -1;
+            }
+            if (this.plannedSet != -1){
+                int tokens = this.table.tokenSlots(this.id, this.aiTokens);
+                for (int i = 0; i < tokens; i++){
+                    if (!analysis.contains(this.plannedSet, this.aiTokens[i])){
+                        return this.aiTokens[i];
+                    }
+                }
+                for (int i = 0; i < env.config.featureSize; i++){
+                    int slot = analysis.slot(this.plannedSet, i);
+                    if (!this.table.hasToken(this.id, slot) && this.table.cardAt(slot) != -1){
+                        return slot;
+                    }
+                }
+                this.plannedSet = -1;
+            }
+        }
+        return this.randomCardSlot();
+    }
+
+    /**
+     * Returns a random slot that has a card in it (-1 if there is none).
+     */
+    private int randomCardSlot() {
+        int start = ThreadLocalRandom.current().nextInt(env.config.tableSize);
+        for (int i = 0; i < env.config.tableSize; i++){
+            int slot = (start + i) % env.config.tableSize;
+            if (this.table.cardAt(slot) != -1){
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Wakes the AI thread (if any) when something it may be waiting for has happened.
+     */
+    protected void wakeComputer() {
+        Thread thread = this.aiThread;
+        if (thread != null){
+            env.clock.unpark(thread);
+        }
+    }
+
+    /**
+     * Called by the dealer when it is done with the set of the player (or drops it), so the player can select again.
+     */
+    public void release() {
+        this.waitingForDealerCheck = false;
+        this.wakeComputer();
+    }
+
     /**
      * Called when the game should be terminated.
      */
@@ -161,9 +337,10 @@ public class Player implements Runnable {
         this.terminate=true;
         //terminating the actions queue.
         this.incomingActionsQueue.terminate();
+        this.wakeComputer();
         //ending the player thread gracfully.
         try {
-            this.playerThread.join();
+            env.clock.join(this.playerThread);
         } catch (InterruptedException e) {}
     }
 
@@ -174,8 +351,16 @@ public class Player implements Runnable {
      */
     public void keyPressed(int slot) {
         //only if the player is not frozen, the action is added to the queue.
-        if (!this.waitingForDealerCheck && timeToFreeze-System.currentTimeMillis()<0){
-            this.incomingActionsQueue.put(slot);
+        if (!this.waitingForDealerCheck && timeToFreeze-env.clock.millis()<0){
+            //a human key press comes from the UI thread, which must never block (a full queue is handled by the
+            //configured policy instead), while the AI thread waits for room.
+            if (human){
+                this.incomingActionsQueue.offer(slot, env.config.keyOverflowPolicy);
+            }
+            else{
+                this.incomingActionsQueue.put(slot);
+                this.aiPresses++;
+            }
         }
     }
 
@@ -187,10 +372,12 @@ public class Player implements Runnable {
      */
     public void point() {
         env.ui.setFreeze(this.id, env.config.pointFreezeMillis);
-        this.timeToFreeze = System.currentTimeMillis() + env.config.pointFreezeMillis;
+        this.timeToFreeze = env.clock.millis() + env.config.pointFreezeMillis;
 
         int ignored = table.countCards(); // this part is just for demonstration in the unit tests
         env.ui.setScore(id, ++score);
+        env.journal.record(GameJournal.POINT, id, score);
+        env.journal.record(GameJournal.FREEZE, id, (int) env.config.pointFreezeMillis);
     }
 
     /**
@@ -198,55 +385,54 @@ public class Player implements Runnable {
      */
     public void penalty() {
         env.ui.setFreeze(this.id, env.config.penaltyFreezeMillis);
-        this.timeToFreeze = System.currentTimeMillis() + env.config.penaltyFreezeMillis;
+        this.timeToFreeze = env.clock.millis() + env.config.penaltyFreezeMillis;
+        penalties++;
+        env.journal.record(GameJournal.PENALTY, id, penalties);
+        env.journal.record(GameJournal.FREEZE, id, (int) env.config.penaltyFreezeMillis);
     }
 
     public int score() {
         return score;
     }
 
+    public int penalties() {
+        return penalties;
+    }
+
     /**
-     * return the PlayerSet of the Player
+     * collects the set of the Player to send to the dealer, with the cell (card and version) of every slot (so the
+     * dealer can tell if any of the slots changed since, even if the same card is back in it). Allocates nothing.
      */
-    private PlayerSet getSet(){
-        int []setSlots = new int [env.config.featureSize];
-        int []setCards = new int [env.config.featureSize];
-        int index=0;
-        for (int i =0; i < this.table.playersTokens[this.id].length ; i++){
-            if (this.table.playersTokens[this.id][i]){
-                setSlots [index] = i;
-                setCards[index] = table.slotToCard[i];
-                index++;
-            }
+    private void collectSet(){
+        int length = this.table.tokenSlots(this.id, setSlots);
+        for (int index = 0; index < length; index++){
+            setCells[index] = table.slotCell(setSlots[index]);
         }
-        return new PlayerSet(this.id, setSlots, setCards);
     }
 
     /**
-     * Method that wraps table.removeToken
+     * tokensLeft = the number of tokens player playerId is not using right now.
      */
-    protected synchronized void removePlayerToken (int slot){
-        if (!this.waitingForDealerCheck && this.table.removeToken(this.id, slot)){
-            this.tokensLeft++;
-        }
+    protected int tokensLeft(){
+        return env.config.featureSize - this.table.tokenCount(this.id);
     }
 
     /**
-     * Method that wraps table.placeToken
+     * Method that wraps table.removeToken
      */
-    protected synchronized void placePlayerToken (int slot){      
-        if (this.tokensLeft > 0 && !this.waitingForDealerCheck && !this.table.playersTokens[this.id][slot] && this.table.slotToCard[slot]!=-1){
-            this.table.placeToken(this.id, slot);
-            this.tokensLeft--;
+    protected void removePlayerToken (int slot){
+        if (!this.waitingForDealerCheck){
+            this.table.removeToken(this.id, slot);
         }
     }
 
     /**
-     * removes all of the tokens the player have on the table.
+     * Method that wraps table.placeToken (only the player thread places the player's tokens, so the number of tokens
+     * left can only grow between the check and the placing)
      */
-    protected synchronized void removeAllPlayerTokens (){
-        for (int i = 0 ; i < this.table.playersTokens[this.id].length ; i++){
-            this.removePlayerToken(i);
+    protected void placePlayerToken (int slot){
+        if (this.tokensLeft() > 0 && !this.waitingForDealerCheck){
+            this.table.placeToken(this.id, slot);
         }
     }
 }
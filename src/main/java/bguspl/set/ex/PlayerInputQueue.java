@@ -1,56 +1,173 @@
 package bguspl.set.ex;
-import java.util.Vector;
+import bguspl.set.Config.KeyOverflowPolicy;
+import bguspl.set.GameClock;
+import bguspl.set.RealClock;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
   
 class PlayerInputQueue{ 
-        //Blocking queue implementation
-        // a vector, used to implement the queue 
-        private Vector<Integer> vec_;
+        //Blocking queue implementation for a single producer (the thread pressing the keys) and a single consumer
+        //(the player thread): a fixed ring of primitive slots, with no lock. A side that has to wait parks, and is
+        //unparked only by the other side, once there is an element (or room) for it (both on the clock of the game).
+        //The producer can also offer an element without blocking (see offer), and cancel elements it put earlier: a
+        //cancelled element stays in the ring (so only the consumer ever moves the head) and the consumer skips it.
+        //An element is claimed by exactly one of them, the consumer with getAndSet and the producer with a CAS.
+        private static final int CANCELLED = -1;
+        private final AtomicIntegerArray ring;
+        private final int mask;
         private final int MAX; 
         protected volatile boolean terminate;
+
+        //the number of elements that were put and are neither taken nor cancelled
+        private final AtomicInteger live = new AtomicInteger();
+
+        //the number of elements taken so far (written by the consumer only) and put so far (written by the producer only)
+        private volatile long head;
+        private volatile long tail;
+
+        //the consumer / producer thread while it is parked (null otherwise)
+        private volatile Thread waitingConsumer;
+        private volatile Thread waitingProducer;
+  
+        //the clock the threads wait on
+        private final GameClock clock;
   
         public PlayerInputQueue(int max) {
-                vec_ = new Vector<Integer>(); 
+                this(max, new RealClock());
+        }
+
+        public PlayerInputQueue(int max, GameClock clock) {
+                this.clock = clock;
+                // the ring has room for at least twice the live elements, for the cancelled ones, and is rounded up to
+                // a power of 2, so an index is a mask instead of a division
+                ring = new AtomicIntegerArray(Integer.highestOneBit(Math.max(max, 1) * 4 - 1));
+                mask = ring.length() - 1;
                 MAX = max; } 
   
-        public synchronized int size(){ 
-                return vec_.size(); 
+        public int size(){ 
+                return live.get(); 
         } 
+
+        private boolean hasRoom(){
+                return live.get() < MAX && tail - head < ring.length();
+        }
   
-        public synchronized void put(Integer e){ 
-                while(size()>=MAX && !this.terminate ){ 
-                        try{ 
-                                this.wait(); 
-                        } catch (InterruptedException ignored){} 
+        public void put(int e){ 
+                while(!hasRoom() && !this.terminate ){ 
+                        waitingProducer = Thread.currentThread();
+                        // checks again after registering, so a take in between is not missed
+                        if (!hasRoom() && !this.terminate){
+                                clock.park(this);
+                        }
+                        waitingProducer = null;
                 }
                 if (!terminate){
-                        vec_.add(e);
+                        publish(e);
                 } 
-                this.notifyAll(); 
         } 
-  
-        public synchronized Integer take(){ 
-                while(size()==0 && !this.terminate){ 
-                        try{ 
-                                this.wait(); 
-                        } catch (InterruptedException ignored){} 
-                } 
+
+        /**
+         * Adds an element without blocking (for the key presses that come from the UI thread).
+         *
+         * @param e      - the element (not negative).
+         * @param policy - what to do if the queue is full.
+         * @return - true iff the element was added (or, with TOGGLE_CANCEL, cancelled a waiting one).
+         */
+        public boolean offer(int e, KeyOverflowPolicy policy){
                 if (terminate){
-                        return -1;
+                        return false;
+                }
+                if (policy == KeyOverflowPolicy.TOGGLE_CANCEL && cancelNewest(e)){
+                        return true;
+                }
+                if (!hasRoom() && policy == KeyOverflowPolicy.DROP_OLDEST){
+                        cancelOldest();
+                }
+                if (!hasRoom()){
+                        return false;
+                }
+                publish(e);
+                return true;
+        }
+
+        private void publish(int e){
+                ring.set((int) tail & mask, e);
+                live.incrementAndGet();
+                tail = tail + 1;
+                Thread consumer = waitingConsumer;
+                if (consumer != null){
+                        clock.unpark(consumer);
+                }
+        }
+
+        /**
+         * Cancels the newest waiting element that equals e. Called by the producer only.
+         */
+        private boolean cancelNewest(int e){
+                for (long position = tail - 1; position >= head; position--){
+                        if (ring.compareAndSet((int) position & mask, e, CANCELLED)){
+                                live.decrementAndGet();
+                                return true;
+                        }
+                }
+                return false;
+        }
+
+        /**
+         * Cancels the oldest waiting element. Called by the producer only.
+         */
+        private void cancelOldest(){
+                for (long position = head; position < tail; position++){
+                        int e = ring.get((int) position & mask);
+                        if (e != CANCELLED && ring.compareAndSet((int) position & mask, e, CANCELLED)){
+                                live.decrementAndGet();
+                                return;
+                        }
+                }
+        }
+  
+        public int take(){ 
+                while (true){
+                        while(head == tail && !this.terminate){ 
+                                waitingConsumer = Thread.currentThread();
+                                if (head == tail && !this.terminate){
+                                        clock.park(this);
+                                }
+                                waitingConsumer = null;
+                        } 
+                        if (terminate){
+                                return -1;
+                        }
+                        int e = ring.getAndSet((int) head & mask, CANCELLED);
+                        head = head + 1;
+                        if (e != CANCELLED){
+                                live.decrementAndGet();
+                        }
+                        // wakes the producer if it is waiting for room in the queue.
+                        Thread producer = waitingProducer;
+                        if (producer != null){
+                                clock.unpark(producer);
+                        }
+                        if (e != CANCELLED){
+                                return e;
+                        }
                 }
-                Integer e = vec_.get(0);
-                vec_.remove(0); 
-                // wakeup everybody. If someone is waiting in the add()  
-                // method, it can now perform the add. 
-                this.notifyAll(); 
-                return e; 
         }
         
         /**
          * The method is called when the game is terminated, in order to terminate all threads gracfully.
          */
-        public synchronized void terminate(){
+        public void terminate(){
                 this.terminate=true;
-                notifyAll();
+                Thread consumer = waitingConsumer;
+                if (consumer != null){
+                        clock.unpark(consumer);
+                }
+                Thread producer = waitingProducer;
+                if (producer != null){
+                        clock.unpark(producer);
+                }
         }
 }
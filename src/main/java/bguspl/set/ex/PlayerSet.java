@@ -2,24 +2,38 @@ package bguspl.set.ex;
 import bguspl.set.Env;
 
 public class PlayerSet {
-    //A class that defines a player set: it holds the slots, cards, and player id.
-    private final int playerId;
+    //A class that defines a player set: it holds the slots, cards, slot versions (see Table.slotCell), player id and
+    //submission time. The dealer reuses a single instance, refilled for every set it takes from the submissions ring.
+    private int playerId;
+    private long submitted;
     private final int[] setSlots;
     private final int[] setCards;
+    private final int[] setVersions;
     
-    public PlayerSet(int playerId, int[] setSlots, int[] setCards) {
+    public PlayerSet(int setSize) {
+        this.setSlots = new int[setSize];
+        this.setCards = new int[setSize];
+        this.setVersions = new int[setSize];
+    }
+
+    void fill(int playerId, long submitted) {
         this.playerId = playerId;
-        this.setSlots = setSlots;
-        this.setCards = setCards;
+        this.submitted = submitted;
     }
 
     public int getPlayerId() {
         return this.playerId;
     }
+    public long getSubmitted() {
+        return this.submitted;
+    }
     public int[] getSetSlots() {
         return this.setSlots;
     }
     public int[] getSetCards(){
         return this.setCards;
     }
+    public int[] getSetVersions(){
+        return this.setVersions;
+    }
 }
@@ -0,0 +1,128 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded queue of set submissions from many players (producers) to the dealer (the only consumer), that does not
+ * allocate per submission. Every submission is a record of longs in a preallocated array:
+ * the player id, the submission time, then the slot and the slot cell (see Table.slotCell) of every token.
+ * Every record has a sequence number that tells whose turn it is to use it (a producer when it equals the position
+ * being claimed, the consumer when it is one past the position being read), so producers only contend on claiming a
+ * position, and never wait for each other while writing.
+ */
+class SetSubmissionRing {
+
+    /**
+     * The number of longs before the tokens of a record.
+     */
+    private static final int HEADER_LONGS = 2;
+
+    /**
+     * The number of tokens in a submission.
+     */
+    private final int setSize;
+
+    /**
+     * The number of longs in a record.
+     */
+    private final int stride;
+
+    private final int mask;
+    private final long[] records;
+    private final AtomicLongArray sequences;
+
+    /**
+     * The next position to claim by a producer.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The next position to read by the consumer (written by the consumer only).
+     */
+    private volatile long head;
+
+    /**
+     * @param capacity - the number of submissions that can wait at once (rounded up to a power of 2).
+     * @param setSize  - the number of tokens in a submission.
+     */
+    SetSubmissionRing(int capacity, int setSize) {
+        int records = Integer.highestOneBit(Math.max(capacity, 1) * 2 - 1);
+        this.setSize = setSize;
+        this.stride = HEADER_LONGS + 2 * setSize;
+        this.mask = records - 1;
+        this.records = new long[records * stride];
+        this.sequences = new AtomicLongArray(records);
+        for (int i = 0; i < records; ++i)
+            sequences.set(i, i);
+    }
+
+    /**
+     * Adds a submission. Called by any player thread.
+     *
+     * @param player    - the player id.
+     * @param timestamp - the submission time.
+     * @param slots     - the slots of the tokens (setSize entries).
+     * @param cells     - the slot cells of the tokens (setSize entries).
+     * @return - false iff the ring is full.
+     */
+    boolean offer(int player, long timestamp, int[] slots, long[] cells) {
+        long position;
+        int index;
+        do {
+            position = tail.get();
+            index = (int) position & mask;
+            long sequence = sequences.get(index);
+            if (sequence < position) return false;
+            if (sequence > position) continue; // another producer claimed this position
+            if (tail.compareAndSet(position, position + 1)) break;
+        } while (true);
+
+        int offset = index * stride;
+        records[offset] = player;
+        records[offset + 1] = timestamp;
+        for (int i = 0; i < setSize; ++i) {
+            records[offset + HEADER_LONGS + i] = slots[i];
+            records[offset + HEADER_LONGS + setSize + i] = cells[i];
+        }
+        // publishes the record to the consumer
+        sequences.lazySet(index, position + 1);
+        return true;
+    }
+
+    /**
+     * Removes the oldest submission into a reusable PlayerSet. Called by the dealer thread only.
+     *
+     * @param set - the set to fill.
+     * @return - false iff there is no submission ready.
+     */
+    boolean poll(PlayerSet set) {
+        long position = head;
+        int index = (int) position & mask;
+        if (sequences.get(index) != position + 1) return false;
+
+        int offset = index * stride;
+        int[] slots = set.getSetSlots();
+        int[] cards = set.getSetCards();
+        int[] versions = set.getSetVersions();
+        for (int i = 0; i < setSize; ++i) {
+            long cell = records[offset + HEADER_LONGS + setSize + i];
+            slots[i] = (int) records[offset + HEADER_LONGS + i];
+            cards[i] = Table.cellCard(cell);
+            versions[i] = Table.cellVersion(cell);
+        }
+        set.fill((int) records[offset], records[offset + 1]);
+        // hands the record back to the producers, for the position one lap ahead
+        sequences.lazySet(index, position + mask + 1);
+        head = position + 1;
+        return true;
+    }
+
+    /**
+     * @return - true iff there is no submission ready for the consumer.
+     */
+    boolean isEmpty() {
+        long position = head;
+        return sequences.get((int) position & mask) != position + 1;
+    }
+}
@@ -1,10 +1,14 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.GameJournal;
+import bguspl.set.Util;
 
 import java.util.Arrays;
 import java.util.List;
-import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
 import java.util.stream.Collectors;
 
 /**
@@ -30,9 +34,27 @@ public class Table {
     protected final Integer[] cardToSlot; // slot per card (if any)
 
     /**
-     * playersTokens[i][j] = true iff player i has a token in slot j
+     * slotCells[slot] = the card in the slot (low 32 bits, -1 if none) and the version of the slot (high 32 bits),
+     * which grows every time a card is placed in or removed from the slot. Written by the dealer only, and read by the
+     * players without a lock (see slotCell).
      */
-    protected final boolean[][] playersTokens;
+    private final AtomicLongArray slotCells;
+
+    /**
+     * The number of words of token bits every player has (one bit per slot).
+     */
+    private final int tokenWords;
+
+    /**
+     * The tokens of player i are the bits of tokens[i * tokenWords] ... tokens[(i + 1) * tokenWords - 1], where
+     * slot j is bit j % 64 of word j / 64. Changed with CAS, so no lock is needed to read or change them.
+     */
+    private final AtomicLongArray tokens;
+
+    /**
+     * Reusable buffer for the slot masks of removeTokens (used by the dealer thread only).
+     */
+    private final long[] slotsMask;
 
     /**
      * the number of tokens each player gets in the game (equals to feature size)
@@ -40,11 +62,37 @@ public class Table {
     protected final int numberOfTokens;
 
     /**
-     * members for RWL
+     * The number of legal sets among the cards currently on the table (kept up to date by placeCard and removeCard).
      */
-    protected int activeReaders = 0;
-    protected int activeWriters = 0;
-    protected int waitingWriters = 0;
+    protected volatile int setCount;
+
+    /**
+     * The legal sets on the table, as of the last call to analyze.
+     */
+    private volatile TableAnalysis analysis = TableAnalysis.EMPTY;
+
+    /**
+     * Reusable buffers for the cards passed to the set completion and search (used by the dealer thread only).
+     */
+    private final int[] completionBuffer;
+    private final int[] cardsBuffer;
+
+    /**
+     * The lock of the table. The dealer changes the cards under the write lock, the players take the read lock to place
+     * their tokens (so no token is placed on a card the dealer is removing). The cards are also published through
+     * slotCells, which the players and the set validation read without the lock.
+     */
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * Lock usage counters (see lockStats).
+     */
+    private final LongAdder readLocks = new LongAdder();
+    private final LongAdder readWaits = new LongAdder();
+    private final LongAdder readWaitNanos = new LongAdder();
+    private final LongAdder writeLocks = new LongAdder();
+    private final LongAdder writeWaits = new LongAdder();
+    private final LongAdder writeWaitNanos = new LongAdder();
 
     /**
      * Constructor for testing.
@@ -58,9 +106,16 @@ public class Table {
         this.env = env;
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
+        this.slotCells = new AtomicLongArray(slotToCard.length);
+        for (int slot = 0; slot < slotToCard.length; ++slot)
+            slotCells.set(slot, cell(0, slotToCard[slot] == null ? -1 : slotToCard[slot]));
 
-        this.playersTokens = new boolean[env.config.players][env.config.tableSize];
+        this.tokenWords = (env.config.tableSize + Long.SIZE - 1) / Long.SIZE;
+        this.tokens = new AtomicLongArray(env.config.players * tokenWords);
+        this.slotsMask = new long[tokenWords];
         this.numberOfTokens = env.config.featureSize;
+        this.completionBuffer = new int[Math.max(env.config.featureSize - 1, 0)];
+        this.cardsBuffer = new int[env.config.tableSize];
     }
 
     /**
@@ -84,15 +139,37 @@ public class Table {
      * This method prints all possible legal sets of cards that are currently on the table.
      */
     public void hints() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).filter(i -> i!=-1).collect(Collectors.toList());
-        env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
-            StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
-            List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
-            int[][] features = env.util.cardsToFeatures(set);
-            System.out.println(sb.append("slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features)));
+        int[] cards = new int[slotToCard.length];
+        int length = cardsOnTable(cards);
+        if (length >= Util.PARALLEL_SEARCH_THRESHOLD)
+            env.util.streamSets(cards, length).parallel().forEachOrdered(this::printHint);
+        else env.util.findSets(cards, length, set -> {
+            printHint(set);
+            return true;
         });
     }
 
+    private void printHint(int[] set) {
+        StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
+        List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
+        int[][] features = env.util.cardsToFeatures(set);
+        System.out.println(sb.append("slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features)));
+    }
+
+    /**
+     * Copies the ids of the cards currently on the table to the given array (in slot order).
+     *
+     * @param cards - the array to fill (of at least config.tableSize entries).
+     * @return - the number of cards copied.
+     */
+    public int cardsOnTable(int[] cards) {
+        int length = 0;
+        for (Integer card : slotToCard)
+            if (card != null && card != -1)
+                cards[length++] = card;
+        return length;
+    }
+
     /**
      * Count the number of cards currently on the table.
      *
@@ -106,6 +183,76 @@ public class Table {
         return cards;
     }
 
+    /**
+     * Returns the number of legal sets among the cards currently on the table, in O(1).
+     *
+     * @return - the number of legal sets on the table.
+     */
+    public int setCount() {
+        return setCount;
+    }
+
+    /**
+     * Returns the last analysis of the table, without a lock. It may be a bit older than the table itself.
+     *
+     * @return - the legal sets on the table.
+     */
+    public TableAnalysis analysis() {
+        return analysis;
+    }
+
+    /**
+     * Finds the legal sets on the table and publishes them to the players (see analysis). Called by the dealer after
+     * it changes the cards.
+     */
+    public void analyze() {
+        int length = cardsOnTable(cardsBuffer);
+        int setSize = env.config.featureSize;
+        int[][] setSlots = {new int[setSize * Math.max(setCount, 1)]};
+        int count = env.util.findSets(cardsBuffer, length, new Util.SetConsumer() {
+            private int index = 0;
+
+            @Override
+            public boolean accept(int[] set) {
+                if (index + setSize > setSlots[0].length) setSlots[0] = Arrays.copyOf(setSlots[0], setSlots[0].length * 2);
+                for (int card : set)
+                    setSlots[0][index++] = cardToSlot[card];
+                return true;
+            }
+        });
+        analysis = new TableAnalysis(analysis.version + 1, setSize, Arrays.copyOf(setSlots[0], count * setSize));
+    }
+
+    /**
+     * Counts the legal sets on the table that contain the given card (which must be on the table).
+     * When config.featureSize is 3 every other card on the table determines the only card that completes the set,
+     * so this is O(n). Otherwise, the sets on the table are counted with and without the card.
+     *
+     * @param card - the card id.
+     * @return - the number of legal sets on the table that contain card.
+     */
+    private int countSetsWith(int card) {
+        if (env.config.featureSize != 3) {
+            int length = cardsOnTable(cardsBuffer);
+            int with = env.util.findSets(cardsBuffer, length, set -> true);
+            int index = 0;
+            while (cardsBuffer[index] != card) ++index;
+            cardsBuffer[index] = cardsBuffer[--length];
+            return with - env.util.findSets(cardsBuffer, length, set -> true);
+        }
+
+        int count = 0;
+        for (Integer other : slotToCard) {
+            if (other == null || other == -1 || other == card) continue;
+            completionBuffer[0] = card;
+            completionBuffer[1] = other;
+            int third = env.util.completeSet(completionBuffer);
+            if (third != -1 && cardToSlot[third] != null && cardToSlot[third] != -1) ++count;
+        }
+        // every set was counted twice (once from each of the other two cards)
+        return count / 2;
+    }
+
     /**
      * Places a card on the table in a grid slot.
      * @param card - the card id to place in the slot.
@@ -114,12 +261,15 @@ public class Table {
      * @post - the card placed is on the table, in the assigned slot.
      */
     public void placeCard(int card, int slot) {
-        try {
-            Thread.sleep(env.config.tableDelayMillis);
+        if (env.config.tableDelayMillis > 0) try {
+            env.clock.sleep(env.config.tableDelayMillis);
         } catch (InterruptedException ignored) {}
 
         cardToSlot[card] = slot;
         slotToCard[slot] = card;
+        setSlotCell(slot, card);
+        env.journal.record(GameJournal.PLACE_CARD, slot, card);
+        setCount += countSetsWith(card);
 
         env.ui.placeCard(card, slot);
     }
@@ -129,14 +279,17 @@ public class Table {
      * @param slot - the slot from which to remove the card.
      */
     public void removeCard(int slot) {
-        try {
-            Thread.sleep(env.config.tableDelayMillis);
+        if (env.config.tableDelayMillis > 0) try {
+            env.clock.sleep(env.config.tableDelayMillis);
         } catch (InterruptedException ignored) {}
 
         //checks if there isnt a card in the slot
         if (slotToCard[slot] != -1){
+            env.journal.record(GameJournal.REMOVE_CARD, slot, slotToCard[slot]);
+            setCount -= countSetsWith(slotToCard[slot]);
             cardToSlot[slotToCard[slot]] = -1;
             slotToCard[slot] = -1;
+            setSlotCell(slot, -1);
         }
         env.ui.removeCard(slot);
     }
@@ -145,12 +298,22 @@ public class Table {
      * Places a player token on a grid slot.
      * @param player - the player the token belongs to.
      * @param slot   - the slot on which to place the token.
+     * @return       - true iff a token was placed (i.e. there is a card in the slot and the player had no token there).
      */
-    public void placeToken(int player, int slot) {
-        if (this.slotToCard[slot]!=-1){
-            this.playersTokens[player][slot]=true;
-            env.ui.placeToken(player, slot);
+    public boolean placeToken(int player, int slot) {
+        if (cardAt(slot)==-1){
+            return false;
         }
+        int index = player * tokenWords + slot / Long.SIZE;
+        long bit = 1L << slot;
+        long word;
+        do {
+            word = tokens.get(index);
+            if ((word & bit) != 0) return false;
+        } while (!tokens.compareAndSet(index, word, word | bit));
+        env.journal.record(GameJournal.PLACE_TOKEN, player, slot);
+        env.ui.placeToken(player, slot);
+        return true;
     }
 
     /**
@@ -160,44 +323,206 @@ public class Table {
      * @return       - true iff a token was successfully removed.
      */
     public boolean removeToken(int player, int slot) {
-        if (this.playersTokens[player][slot]){
-            playersTokens[player][slot]=false;
-            env.ui.removeToken(player, slot);
-            return true;
+        if ((clearBits(player * tokenWords + slot / Long.SIZE, 1L << slot) & 1L << slot) == 0){
+            return false;
         }
-        return false;
+        env.journal.record(GameJournal.REMOVE_TOKEN, player, slot);
+        env.ui.removeToken(player, slot);
+        return true;
     }
 
-    //RWL
-    protected synchronized void beforeRead() {
-        while (! (waitingWriters == 0 && activeWriters == 0)) {
-            try {
-                wait();
-            } catch (InterruptedException e) {
-            }
+    /**
+     * Removes the tokens of all the players from the given slots, in a single pass over the token words.
+     * @param slots - the slots to clear.
+     */
+    public void removeTokens(int[] slots) {
+        Arrays.fill(slotsMask, 0);
+        for (int slot : slots)
+            slotsMask[slot / Long.SIZE] |= 1L << slot;
+        for (int index = 0; index < tokens.length(); ++index) {
+            long mask = slotsMask[index % tokenWords];
+            if (mask != 0 && (tokens.get(index) & mask) != 0) clearBits(index, mask);
+        }
+        for (int slot : slots) {
+            env.journal.record(GameJournal.CLEAR_SLOT_TOKENS, slot, 0);
+            env.ui.removeTokens(slot);
         }
-        activeReaders++;
-      }
-     
-    protected synchronized void afterRead()  { 
-        activeReaders--;
-        notifyAll();  
-      }
-     
-    protected synchronized void beforeWrite() {
-        waitingWriters++;
-        while (! (activeReaders == 0 && activeWriters == 0)) {
-            try {
-                wait();
-            } catch (InterruptedException e) {
+    }
+
+    /**
+     * Removes the tokens of all the players from the table.
+     */
+    public void removeAllTokens() {
+        for (int index = 0; index < tokens.length(); ++index)
+            if (tokens.get(index) != 0) tokens.set(index, 0);
+        env.journal.record(GameJournal.CLEAR_ALL_TOKENS, 0, 0);
+        env.ui.removeTokens();
+    }
+
+    /**
+     * Clears bits of a token word.
+     * @return - the word before the bits were cleared.
+     */
+    private long clearBits(int index, long bits) {
+        long word;
+        do {
+            word = tokens.get(index);
+            if ((word & bits) == 0) return word;
+        } while (!tokens.compareAndSet(index, word, word & ~bits));
+        return word;
+    }
+
+    /**
+     * Returns true iff the player has a token in the slot, without a lock.
+     *
+     * @param player - the player id.
+     * @param slot   - the slot.
+     * @return - true iff player has a token in slot.
+     */
+    public boolean hasToken(int player, int slot) {
+        return (tokens.get(player * tokenWords + slot / Long.SIZE) & 1L << slot) != 0;
+    }
+
+    /**
+     * Returns the number of tokens a player has on the table.
+     *
+     * @param player - the player id.
+     * @return - the number of tokens.
+     */
+    public int tokenCount(int player) {
+        int count = 0;
+        for (int word = 0; word < tokenWords; ++word)
+            count += Long.bitCount(tokens.get(player * tokenWords + word));
+        return count;
+    }
+
+    /**
+     * Copies the slots a player has tokens in to the given array (in slot order).
+     *
+     * @param player - the player id.
+     * @param slots  - the array to fill (at most slots.length slots are copied).
+     * @return - the number of slots copied.
+     */
+    public int tokenSlots(int player, int[] slots) {
+        int length = 0;
+        for (int word = 0; word < tokenWords && length < slots.length; ++word) {
+            long bits = tokens.get(player * tokenWords + word);
+            while (bits != 0 && length < slots.length) {
+                slots[length++] = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
             }
         }
-        waitingWriters--;
-        activeWriters++;
-      }
-     
-    protected synchronized void afterWrite() { 
-        activeWriters--;
-        notifyAll(); 
-      }
+        return length;
+    }
+
+    /**
+     * Returns the card in a slot (-1 if none), without a lock.
+     *
+     * @param slot - the slot.
+     * @return - the card id in slot, or -1 if there is none.
+     */
+    public int cardAt(int slot) {
+        return cellCard(slotCells.get(slot));
+    }
+
+    /**
+     * Returns the card and version of a slot, packed in a long (see cellCard and cellVersion), without a lock.
+     * Two reads of the same slot return the same value iff no card was placed in or removed from the slot in between,
+     * even if the same card is back in the slot.
+     *
+     * @param slot - the slot.
+     * @return - the cell of the slot.
+     */
+    public long slotCell(int slot) {
+        return slotCells.get(slot);
+    }
+
+    /**
+     * @return - the card id in a slot cell (-1 if none).
+     */
+    public static int cellCard(long cell) {
+        return (int) cell;
+    }
+
+    /**
+     * @return - the version of a slot cell.
+     */
+    public static int cellVersion(long cell) {
+        return (int) (cell >>> 32);
+    }
+
+    private static long cell(int version, int card) {
+        return (long) version << 32 | card & 0xFFFFFFFFL;
+    }
+
+    /**
+     * Publishes a new card (or -1) in a slot and bumps its version. Called by the dealer only.
+     */
+    private void setSlotCell(int slot, int card) {
+        slotCells.set(slot, cell(cellVersion(slotCells.get(slot)) + 1, card));
+    }
+
+    /**
+     * Takes the read lock of the table (shared between the players).
+     *
+     * @return - the stamp to pass to afterRead.
+     */
+    protected long beforeRead() {
+        long stamp = lock.tryReadLock();
+        if (stamp == 0) {
+            long start = System.nanoTime();
+            stamp = env.clock.virtual() ? pollLock(false) : lock.readLock();
+            readWaits.increment();
+            readWaitNanos.add(System.nanoTime() - start);
+        }
+        readLocks.increment();
+        return stamp;
+    }
+
+    protected void afterRead(long stamp) {
+        lock.unlockRead(stamp);
+    }
+
+    /**
+     * Takes the write lock of the table (used by the dealer to change the cards).
+     *
+     * @return - the stamp to pass to afterWrite.
+     */
+    protected long beforeWrite() {
+        long stamp = lock.tryWriteLock();
+        if (stamp == 0) {
+            long start = System.nanoTime();
+            stamp = env.clock.virtual() ? pollLock(true) : lock.writeLock();
+            writeWaits.increment();
+            writeWaitNanos.add(System.nanoTime() - start);
+        }
+        writeLocks.increment();
+        return stamp;
+    }
+
+    protected void afterWrite(long stamp) {
+        lock.unlockWrite(stamp);
+    }
+
+    /**
+     * Takes the lock by trying it every millisecond of the game clock. Used with a virtual clock, where the holder of
+     * the lock may be waiting on the clock (the dealer sleeps for the table delay while it holds the write lock), and
+     * the time would never pass while another thread is blocked on the lock itself.
+     */
+    private long pollLock(boolean write) {
+        long stamp;
+        while ((stamp = write ? lock.tryWriteLock() : lock.tryReadLock()) == 0)
+            env.clock.parkUntil(lock, env.clock.millis() + 1);
+        return stamp;
+    }
+
+    /**
+     * Returns a summary of the table lock usage so far: how many times each lock was taken, and how many of those had
+     * to wait and for how long in total.
+     */
+    public String lockStats() {
+        return String.format("read locks: %d (%d waited, %d us), write locks: %d (%d waited, %d us)",
+                readLocks.sum(), readWaits.sum(), readWaitNanos.sum() / 1000,
+                writeLocks.sum(), writeWaits.sum(), writeWaitNanos.sum() / 1000);
+    }
 }
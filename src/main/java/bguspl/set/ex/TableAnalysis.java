@@ -0,0 +1,58 @@
+package bguspl.set.ex;
+
+/**
+ * An immutable snapshot of the legal sets on the table, computed once by the dealer every time the table changes and
+ * read by all the computer players without a lock (see Table.analysis).
+ */
+public final class TableAnalysis {
+
+    /**
+     * The analysis of an empty table.
+     */
+    static final TableAnalysis EMPTY = new TableAnalysis(0, 0, new int[0]);
+
+    /**
+     * The number of the analysis. Grows with every analysis, so a player can tell that the table changed.
+     */
+    public final long version;
+
+    private final int setSize;
+
+    /**
+     * The slots of set i are setSlots[i * setSize] ... setSlots[(i + 1) * setSize - 1].
+     */
+    private final int[] setSlots;
+
+    TableAnalysis(long version, int setSize, int[] setSlots) {
+        this.version = version;
+        this.setSize = setSize;
+        this.setSlots = setSlots;
+    }
+
+    /**
+     * @return - the number of legal sets on the table.
+     */
+    public int setCount() {
+        return setSize == 0 ? 0 : setSlots.length / setSize;
+    }
+
+    /**
+     * Returns a slot of a set.
+     *
+     * @param set   - the index of the set (between 0 and setCount() - 1).
+     * @param index - the index of the slot in the set.
+     * @return - the slot.
+     */
+    public int slot(int set, int index) {
+        return setSlots[set * setSize + index];
+    }
+
+    /**
+     * @return - true iff the given slot is one of the slots of the set.
+     */
+    public boolean contains(int set, int slot) {
+        for (int i = 0; i < setSize; ++i)
+            if (setSlots[set * setSize + i] == slot) return true;
+        return false;
+    }
+}
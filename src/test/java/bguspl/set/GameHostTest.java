@@ -0,0 +1,72 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GameHostTest {
+
+    @Test
+    void submit_PlaysGamesAtOnce() throws InterruptedException, ExecutionException {
+        Properties properties = new Properties();
+        properties.put("ComputerPlayers", "3");
+        properties.put("ComputerSkill", "0.5");
+        properties.put("VirtualClock", "True");
+        Simulation.headless(properties);
+        Config config = new Config(new UtilImplTest.MockLogger(), properties);
+
+        List<Future<Game>> games = new ArrayList<>();
+        try (GameHost host = new GameHost(new UtilImplTest.MockLogger(), config, new PackedUtilImpl(config), 2)) {
+            for (int i = 0; i < 4; ++i)
+                games.add(host.submit());
+        }
+
+        for (Future<Game> game : games) {
+            assertTrue(game.isDone());
+            assertTrue(game.get().sets() > 0);
+            assertTrue(game.get().env.clock.millis() > 0);
+        }
+        assertNotSame(games.get(0).get().env.clock, games.get(1).get().env.clock);
+    }
+
+    @Test
+    void submit_JournalsGamesWithTheSameSeedToFilesOfTheirOwn(@TempDir Path directory)
+            throws InterruptedException, ExecutionException, IOException {
+        Properties properties = new Properties();
+        properties.put("ComputerPlayers", "3");
+        properties.put("ComputerSkill", "0.5");
+        properties.put("VirtualClock", "True");
+        properties.put("RandomSeed", "42");
+        properties.put("JournalFile", directory.resolve("game-%d.journal").toString());
+        Simulation.headless(properties);
+        Config config = new Config(new UtilImplTest.MockLogger(), properties);
+
+        List<Future<Game>> games = new ArrayList<>();
+        try (GameHost host = new GameHost(new UtilImplTest.MockLogger(), config, new PackedUtilImpl(config), 2)) {
+            for (int i = 0; i < 2; ++i)
+                games.add(host.submit());
+        }
+
+        // the journals are opened when the games are submitted, so the second game gets the second file
+        String[] files = {"game-42.journal", "game-42-2.journal"};
+        for (int i = 0; i < files.length; ++i) {
+            Game game = games.get(i).get();
+            JournalReplay.Summary summary = JournalReplay.replay(directory.resolve(files[i]), null);
+            assertEquals(42, summary.seed);
+            assertEquals(game.sets(), summary.sets);
+            assertArrayEquals(game.scores(), summary.scores);
+        }
+    }
+}
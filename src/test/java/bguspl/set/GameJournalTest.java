@@ -0,0 +1,70 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GameJournalTest {
+
+    @Test
+    void replay_RebuildsTheGame(@TempDir Path directory) throws IOException {
+        Properties properties = new Properties();
+        properties.put("FeatureCount", "3");
+        properties.put("ComputerPlayers", "3");
+        properties.put("ComputerSkill", "0.5");
+        properties.put("VirtualClock", "True");
+        properties.put("RandomSeed", "7");
+        properties.put("JournalFile", directory.resolve("game-%d.journal").toString());
+        Simulation.headless(properties);
+        Config config = new Config(new UtilImplTest.MockLogger(), properties);
+        Env env = new Env(new UtilImplTest.MockLogger(), config, new NoUserInterface(), new PackedUtilImpl(config));
+
+        Game game = new Game(env);
+        game.run();
+        JournalReplay.Summary summary = JournalReplay.replay(directory.resolve("game-7.journal"), null);
+
+        assertEquals(7, summary.seed);
+        assertEquals(game.sets(), summary.sets);
+        assertEquals(game.penalties(), summary.penalties);
+        assertArrayEquals(game.scores(), summary.scores);
+        assertArrayEquals(game.winners(), summary.winners);
+        assertTrue(summary.cardsPlaced >= config.tableSize);
+    }
+
+    @Test
+    void open_NoJournalForAnInvalidFileFormat() {
+        Properties properties = new Properties();
+        properties.put("JournalFile", "100%.journal");
+        Config config = new Config(new UtilImplTest.MockLogger(), properties);
+
+        assertEquals("", config.journalFile);
+        assertFalse(GameJournal.open(config, new RealClock(), Thread::new, 7, new UtilImplTest.MockLogger()).enabled());
+    }
+
+    @Test
+    void replay_DoesNotVerifyAfterLostEvents(@TempDir Path directory) throws IOException {
+        ByteBuffer journal = ByteBuffer.allocate(GameJournal.HEADER_BYTES + 3 * GameJournal.RECORD_BYTES);
+        journal.putInt(GameJournal.MAGIC).putInt(GameJournal.VERSION).putInt(3).putInt(4).putInt(3).putInt(4).putInt(2)
+                .putLong(7);
+        journal.put(GameJournal.PLACE_CARD).putLong(0).putInt(0).putInt(5);
+        journal.put(GameJournal.LOST).putLong(1).putInt(10).putInt(0);
+        // the point of a set whose events were lost
+        journal.put(GameJournal.POINT).putLong(2).putInt(1).putInt(1);
+        Path file = directory.resolve("lost.journal");
+        Files.write(file, journal.array());
+
+        JournalReplay.Summary summary = JournalReplay.replay(file, null);
+        assertEquals(10, summary.lost);
+        assertEquals(1, summary.scores[1]);
+    }
+}
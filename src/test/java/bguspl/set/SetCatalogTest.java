@@ -0,0 +1,101 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SetCatalogTest {
+
+    private static Config config(String catalogFile) {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "4");
+        properties.put("SetCatalogFile", catalogFile);
+        return new Config(new UtilImplTest.MockLogger(), properties);
+    }
+
+    @Test
+    void build_HasEveryLegalSet() {
+        Config config = config("");
+        Util util = new UtilImpl(config);
+        SetCatalog catalog = SetCatalog.build(config, util);
+
+        assertEquals(1080, catalog.setCount);
+        for (int set = 0; set < catalog.setCount; ++set) {
+            int[] cards = new int[catalog.setSize];
+            for (int i = 0; i < cards.length; ++i)
+                cards[i] = catalog.card(set, i);
+            assertTrue(util.testSet(cards));
+        }
+    }
+
+    @Test
+    void load_MappedFileMatchesMemory(@TempDir Path directory) {
+        Config config = config(directory.resolve("catalog.bin").toString());
+        Util util = new UtilImpl(config);
+        Logger logger = new UtilImplTest.MockLogger();
+        SetCatalog memory = SetCatalog.build(config, util);
+
+        // the first load builds the file, the second one only maps it
+        for (int load = 0; load < 2; ++load) {
+            SetCatalog mapped = SetCatalog.load(config, util, logger);
+            assertEquals(memory.setCount, mapped.setCount);
+            for (int set = 0; set < memory.setCount; ++set)
+                for (int i = 0; i < memory.setSize; ++i)
+                    assertEquals(memory.card(set, i), mapped.card(set, i));
+
+            SetCatalog.Tracker tracker = mapped.newTracker();
+            tracker.removeCard(0);
+            assertEquals(1080 - 40, tracker.completableSets());
+            // any two cards are in exactly one set together
+            tracker.removeCard(1);
+            assertEquals(1080 - 40 - 39, tracker.completableSets());
+        }
+    }
+
+    @Test
+    void map_SmallRegionsMatchMemory(@TempDir Path directory) throws IOException {
+        Config config = config(directory.resolve("catalog.bin").toString());
+        Util util = new UtilImpl(config);
+        SetCatalog memory = SetCatalog.load(config, util, new UtilImplTest.MockLogger());
+
+        // regions of 16 ints, so the sets and the incidence lists span many mappings and start inside one
+        SetCatalog mapped = SetCatalog.map(directory.resolve("catalog.bin"), 4);
+        for (int set = 0; set < memory.setCount; ++set)
+            for (int i = 0; i < memory.setSize; ++i)
+                assertEquals(memory.card(set, i), mapped.card(set, i));
+        SetCatalog.Tracker tracker = mapped.newTracker();
+        tracker.removeCard(80);
+        assertEquals(1080 - 40, tracker.completableSets());
+    }
+
+    @Test
+    void load_RebuildsTruncatedFile(@TempDir Path directory) throws IOException {
+        Path path = directory.resolve("catalog.bin");
+        Config config = config(path.toString());
+        Util util = new UtilImpl(config);
+        Logger logger = new UtilImplTest.MockLogger();
+        SetCatalog.load(config, util, logger);
+        long size;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            size = channel.size();
+            channel.truncate(size / 2);
+        }
+
+        SetCatalog.Tracker tracker = SetCatalog.load(config, util, logger).newTracker();
+        tracker.removeCard(0);
+        assertEquals(1080 - 40, tracker.completableSets());
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            assertEquals(size, channel.size());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package bguspl.set;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * A benchmark of the set search over large decks: the sequential findSets against the parallel streamSets.
+ * Not a unit test, run it after mvn test-compile with:
+ * java -cp target/classes:target/test-classes bguspl.set.SetSearchBenchmark
+ */
+public class SetSearchBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int ROUNDS = 10;
+
+    public static void main(String[] args) {
+        Logger logger = Logger.getLogger("SetSearchBenchmark");
+        logger.setUseParentHandlers(false);
+        System.out.println("cores: " + Runtime.getRuntime().availableProcessors());
+
+        for (int featureCount = 5; featureCount <= 8; ++featureCount) {
+            Properties properties = new Properties();
+            properties.put("FeatureCount", Integer.toString(featureCount));
+            Config config = new Config(logger, properties);
+            Util util = new PackedUtilImpl(config);
+
+            List<Integer> deck = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+            Collections.shuffle(deck, new Random(featureCount));
+            int[] cards = deck.stream().mapToInt(Integer::intValue).toArray();
+
+            System.out.println("FeatureCount=" + featureCount + " (" + cards.length + " cards)");
+            long sequential = measure("  findSets, all sets         ", () -> util.findSets(cards, cards.length, set -> true));
+            long parallel = measure("  streamSets parallel, count  ", () -> util.streamSets(cards, cards.length).parallel().count());
+            System.out.printf("  speedup: %.2fx%n", (double) sequential / parallel);
+            measure("  streamSets parallel, findAny", () -> util.streamSets(cards, cards.length).parallel().findAny().isPresent() ? 1 : 0);
+        }
+    }
+
+    /**
+     * Runs the task a few times to warm up, then returns (and prints) the median run time in microseconds.
+     */
+    private static long measure(String name, LongSupplier task) {
+        long result = 0;
+        for (int i = 0; i < WARMUP_ROUNDS; ++i)
+            result += task.getAsLong();
+        long[] times = new long[ROUNDS];
+        for (int i = 0; i < ROUNDS; ++i) {
+            long start = System.nanoTime();
+            result += task.getAsLong();
+            times[i] = (System.nanoTime() - start) / 1000;
+        }
+        Arrays.sort(times);
+        System.out.println(name + ": " + times[ROUNDS / 2] + " us (" + result + ")");
+        return times[ROUNDS / 2];
+    }
+}
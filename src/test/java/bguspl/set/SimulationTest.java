@@ -0,0 +1,26 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SimulationTest {
+
+    @Test
+    void play_FinishesAGameOfComputerPlayers() {
+        Properties properties = new Properties();
+        properties.put("ComputerPlayers", "2");
+        properties.put("ComputerSkill", "1");
+        properties.put("TurnTimeoutSeconds", "-1");
+        properties.put("PointFreezeSeconds", "0");
+        properties.put("PenaltyFreezeSeconds", "0");
+        Simulation.headless(properties);
+        Config config = new Config(new UtilImplTest.MockLogger(), properties);
+        Util util = new PackedUtilImpl(config);
+        Env env = new Env(new UtilImplTest.MockLogger(), config, new NoUserInterface(), util);
+
+        assertTrue(Simulation.play(env) > 0);
+    }
+}
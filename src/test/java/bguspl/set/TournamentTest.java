@@ -0,0 +1,30 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TournamentTest {
+
+    @Test
+    void play_AggregatesTheResultsOfEveryGame() throws InterruptedException, ExecutionException {
+        Properties properties = new Properties();
+        properties.put("FeatureCount", "3");
+        properties.put("ComputerPlayers", "2");
+        properties.put("ComputerSkill", "0.5");
+        properties.put("VirtualClock", "True");
+        Simulation.headless(properties);
+        Config config = new Config(new UtilImplTest.MockLogger(), properties);
+
+        Tournament.Results results = Tournament.play(new UtilImplTest.MockLogger(), config, 5, 1, 2);
+
+        assertEquals(5, results.games);
+        assertTrue(results.sets > 0);
+        assertTrue(results.gameMillis > 0);
+        assertTrue(results.wins[0] + results.wins[1] >= results.games);
+    }
+}
@@ -0,0 +1,215 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class UtilImplTest {
+
+    private static Config config(int featureSize, int featureCount) {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", Integer.toString(featureSize));
+        properties.put("FeatureCount", Integer.toString(featureCount));
+        return new Config(new MockLogger(), properties);
+    }
+
+    private static List<Integer> shuffledDeck(Config config, int size, long seed) {
+        List<Integer> deck = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+        Collections.shuffle(deck, new Random(seed));
+        return deck.subList(0, size);
+    }
+
+    /**
+     * Finds the sets the slow way: testing every combination of cards in lexicographic order.
+     */
+    private static List<int[]> bruteForce(Util util, Config config, List<Integer> deck) {
+        List<int[]> sets = new ArrayList<>();
+        int r = config.featureSize;
+        int[] combination = IntStream.range(0, r).toArray();
+        while (combination[r - 1] < deck.size()) {
+            int[] cards = IntStream.of(combination).map(deck::get).sorted().toArray();
+            if (util.testSet(cards)) sets.add(cards);
+            int t = r - 1;
+            while (t != 0 && combination[t] == deck.size() - r + t) --t;
+            combination[t]++;
+            for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+        }
+        return sets;
+    }
+
+    private static void assertSameSets(List<int[]> expected, List<int[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i)
+            assertArrayEquals(expected.get(i), actual.get(i));
+    }
+
+    @Test
+    void findSets_FullDeck() {
+        Config config = config(3, 4);
+        Util util = new UtilImpl(config);
+        List<Integer> deck = shuffledDeck(config, config.deckSize, 1);
+
+        List<int[]> sets = util.findSets(deck, Integer.MAX_VALUE);
+        assertEquals(1080, sets.size());
+        assertSameSets(bruteForce(util, config, deck), sets);
+    }
+
+    @Test
+    void findSets_TableSizedDecks() {
+        Config config = config(3, 4);
+        Util util = new UtilImpl(config);
+        for (long seed = 0; seed < 50; ++seed) {
+            List<Integer> deck = shuffledDeck(config, 12, seed);
+            assertSameSets(bruteForce(util, config, deck), util.findSets(deck, Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    void findSets_FeatureSizeFour() {
+        Config config = config(4, 3);
+        Util util = new UtilImpl(config);
+        List<Integer> deck = shuffledDeck(config, 30, 7);
+        assertSameSets(bruteForce(util, config, deck), util.findSets(deck, Integer.MAX_VALUE));
+    }
+
+    @Test
+    void findSets_FeatureSizeFive() {
+        Config config = config(5, 3);
+        Util util = new UtilImpl(config);
+        for (long seed = 0; seed < 5; ++seed) {
+            List<Integer> deck = shuffledDeck(config, 40, seed);
+            List<int[]> expected = bruteForce(util, config, deck);
+            assertSameSets(expected, util.findSets(deck, Integer.MAX_VALUE));
+            int[] cards = deck.stream().mapToInt(Integer::intValue).toArray();
+            assertSameSets(expected, util.streamSets(cards, cards.length).parallel().collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void findSets_StopsAtCount() {
+        Config config = config(3, 4);
+        Util util = new UtilImpl(config);
+        List<Integer> deck = shuffledDeck(config, config.deckSize, 3);
+        List<int[]> expected = bruteForce(util, config, deck).subList(0, 5);
+        assertSameSets(expected, util.findSets(deck, 5));
+    }
+
+    @Test
+    void findSets_ArrayStopsWhenConsumerDeclines() {
+        Config config = config(3, 4);
+        Util util = new UtilImpl(config);
+        int[] cards = shuffledDeck(config, config.deckSize, 5).stream().mapToInt(Integer::intValue).toArray();
+        List<int[]> expected = util.findSets(IntStream.of(cards).boxed().collect(Collectors.toList()), 3);
+        List<int[]> reported = new ArrayList<>();
+
+        int found = util.findSets(cards, cards.length, set -> {
+            reported.add(set.clone());
+            return reported.size() < 3;
+        });
+        assertEquals(3, found);
+        assertSameSets(expected, reported);
+        assertEquals(0, util.findSets(cards, 2, set -> true));
+    }
+
+    @Test
+    void streamSets_ParallelMatchesFindSets() {
+        for (int featureSize = 2; featureSize <= 5; ++featureSize) {
+            Config config = config(featureSize, featureSize == 2 ? 8 : featureSize == 5 ? 4 : 5);
+            Util util = new PackedUtilImpl(config);
+            List<Integer> deck = shuffledDeck(config, Math.min(config.deckSize, 200), featureSize);
+            int[] cards = deck.stream().mapToInt(Integer::intValue).toArray();
+
+            List<int[]> expected = util.findSets(deck, Integer.MAX_VALUE);
+            assertSameSets(expected, util.streamSets(cards, cards.length).collect(Collectors.toList()));
+            assertSameSets(expected, util.streamSets(cards, cards.length).parallel().collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    void testSet_MatchesFeatureDefinition() {
+        Config config = config(3, 4);
+        Util util = new UtilImpl(config);
+        Random random = new Random(11);
+        for (int n = 0; n < 1000; ++n) {
+            int[] cards = random.ints(0, config.deckSize).distinct().limit(3).toArray();
+            int[][] features = util.cardsToFeatures(cards);
+            boolean expected = true;
+            for (int i = 0; i < config.featureCount; ++i) {
+                int a = features[0][i], b = features[1][i], c = features[2][i];
+                boolean sameSame = a == b && b == c, butDifferent = a != b && b != c && a != c;
+                expected &= sameSame || butDifferent;
+            }
+            assertEquals(expected, util.testSet(cards));
+        }
+    }
+
+    @Test
+    void packedUtil_MatchesUtilImpl() {
+        for (int featureCount = 1; featureCount <= 6; ++featureCount) {
+            Config config = config(3, featureCount);
+            Util util = new UtilImpl(config);
+            Util packed = new PackedUtilImpl(config);
+            Random random = new Random(featureCount);
+            for (int n = 0; n < 1000; ++n) {
+                int[] cards = random.ints(0, config.deckSize).limit(3).toArray();
+                assertEquals(util.testSet(cards), packed.testSet(cards));
+            }
+            List<Integer> deck = shuffledDeck(config, Math.min(config.deckSize, 100), featureCount);
+            assertSameSets(util.findSets(deck, Integer.MAX_VALUE), packed.findSets(deck, Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    void completeSet_DefaultMatchesUtilImpl() {
+        for (int featureSize = 3; featureSize <= 4; ++featureSize) {
+            Config config = config(featureSize, 4);
+            Util util = new UtilImpl(config);
+            // a Util of its own, with the default completeSet
+            Util other = new Util() {
+                @Override
+                public int[] cardToFeatures(int card) {
+                    return util.cardToFeatures(card);
+                }
+
+                @Override
+                public int[][] cardsToFeatures(int[] cards) {
+                    return util.cardsToFeatures(cards);
+                }
+
+                @Override
+                public boolean testSet(int[] cards) {
+                    return util.testSet(cards);
+                }
+
+                @Override
+                public List<int[]> findSets(List<Integer> deck, int count) {
+                    return util.findSets(deck, count);
+                }
+
+                @Override
+                public void spin() {}
+            };
+            Random random = new Random(featureSize);
+            for (int n = 0; n < 1000; ++n) {
+                int[] cards = random.ints(0, config.deckSize).distinct().limit(featureSize - 1).toArray();
+                assertEquals(util.completeSet(cards), other.completeSet(cards));
+            }
+        }
+    }
+
+    static class MockLogger extends Logger {
+        protected MockLogger() {
+            super("", null);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtualClockTest {
+
+    @Test
+    void parkUntil_JumpsToTheEarliestDeadline() throws InterruptedException {
+        VirtualClock clock = new VirtualClock();
+        ThreadFactory factory = clock.participants(Thread::new);
+        AtomicLong wokenAt = new AtomicLong(-1);
+        Thread sleeper = factory.newThread(() -> clock.sleep(60_000));
+        Thread waiter = factory.newThread(() -> {
+            clock.parkUntil(this, 3_000);
+            wokenAt.set(clock.millis());
+        });
+
+        long start = System.nanoTime();
+        sleeper.start();
+        waiter.start();
+        sleeper.join();
+        waiter.join();
+
+        assertEquals(3_000, wokenAt.get());
+        assertEquals(60_000, clock.millis());
+        assertTrue(System.nanoTime() - start < 10_000_000_000L);
+    }
+
+    @Test
+    void unpark_WakesWithoutTimePassing() throws InterruptedException {
+        VirtualClock clock = new VirtualClock();
+        ThreadFactory factory = clock.participants(Thread::new);
+        AtomicBoolean ready = new AtomicBoolean();
+        Thread waiter = factory.newThread(() -> {
+            while (!ready.get())
+                clock.park(this);
+        });
+        Thread waker = factory.newThread(() -> {
+            clock.sleep(1_000);
+            ready.set(true);
+            clock.unpark(waiter);
+        });
+
+        waiter.start();
+        waker.start();
+        waker.join();
+        waiter.join();
+
+        assertEquals(1_000, clock.millis());
+    }
+}
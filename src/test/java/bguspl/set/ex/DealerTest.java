@@ -0,0 +1,119 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.NoUserInterface;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DealerTest {
+
+    private Table table;
+
+    /**
+     * The number of reshuffles, and of reshuffles of a table that still had a set on it (counted by the dealer thread).
+     */
+    private int reshuffles;
+    private int reshufflesWithSets;
+
+    @Test
+    void run_NoCountdown_ReshufflesOnlyWhenThereIsNoSet() throws InterruptedException {
+        playCollectingEverySet("-1");
+    }
+
+    @Test
+    void run_ElapsedTime_ReshufflesOnlyWhenThereIsNoSet() throws InterruptedException {
+        playCollectingEverySet("0");
+    }
+
+    /**
+     * Plays a game of one human player on a table of 4 slots, where the test collects every set it sees on the table.
+     * Nothing wakes the dealer but the sets, so after a set is collected it must find out by itself whether the new
+     * cards left a set on the table.
+     */
+    private void playCollectingEverySet(String turnTimeoutSeconds) throws InterruptedException {
+        Properties properties = new Properties();
+        properties.put("Rows", "1");
+        properties.put("Columns", "4");
+        properties.put("FeatureSize", "3");
+        properties.put("FeatureCount", "3");
+        properties.put("HumanPlayers", "1");
+        properties.put("ComputerPlayers", "0");
+        properties.put("PlayerKeys1", "81,87,69,82");
+        properties.put("TurnTimeoutSeconds", turnTimeoutSeconds);
+        properties.put("PointFreezeSeconds", "0");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("EndGamePauseSeconds", "0");
+        properties.put("Hints", "False");
+        properties.put("RandomSeed", "7");
+        Logger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+        Env env = new Env(logger, config, new NoUserInterface() {
+            @Override
+            public void removeTokens() {
+                reshuffles++;
+                if (table.setCount() > 0) reshufflesWithSets++;
+            }
+        }, new UtilImpl(config));
+        table = new Table(env);
+        Player[] players = new Player[1];
+        Dealer dealer = new Dealer(env, table, players);
+        players[0] = new Player(env, dealer, table, 0, true);
+
+        Thread thread = new Thread(dealer);
+        thread.start();
+        int[] slots = new int[config.featureSize];
+        long[] cells = new long[config.featureSize];
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (thread.isAlive() && System.currentTimeMillis() < deadline) {
+            if (findSet(env, slots, cells)) {
+                dealer.addSetToCheck(0, slots, cells);
+                // waits until the dealer took the set off the table (collected, or dropped if it changed meanwhile)
+                while (thread.isAlive() && table.slotCell(slots[0]) == cells[0] && System.currentTimeMillis() < deadline)
+                    Thread.yield();
+            } else {
+                Thread.yield();
+            }
+        }
+        thread.join(1000);
+
+        assertFalse(thread.isAlive());
+        assertTrue(players[0].score() > 0);
+        assertTrue(reshuffles > 0);
+        assertEquals(0, reshufflesWithSets);
+    }
+
+    /**
+     * Finds a set on the table (reading every slot once, with no lock).
+     *
+     * @return - true iff a set was found, in which case its slots and slot cells are in slots and cells.
+     */
+    private boolean findSet(Env env, int[] slots, long[] cells) {
+        long[] table = new long[env.config.tableSize];
+        List<Integer> cards = new ArrayList<>();
+        for (int slot = 0; slot < table.length; slot++) {
+            table[slot] = this.table.slotCell(slot);
+            if (Table.cellCard(table[slot]) != -1) cards.add(Table.cellCard(table[slot]));
+        }
+        List<int[]> sets = env.util.findSets(cards, 1);
+        if (sets.isEmpty()) return false;
+        for (int i = 0; i < slots.length; i++) {
+            for (int slot = 0; slot < table.length; slot++) {
+                if (Table.cellCard(table[slot]) == sets.get(0)[i]) {
+                    slots[i] = slot;
+                    cells[i] = table[slot];
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,154 @@
+package bguspl.set.ex;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Vector;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A benchmark of PlayerInputQueue against the Vector based queue it replaced, with one thread pressing keys and one
+ * thread taking them (as a player and its key source do).
+ * It measures the throughput of a burst of key presses, the latency from a key press until it is taken when the keys
+ * are pressed one at a time (so the taking thread is waiting for each one), and the context switches per key press
+ * (from /proc, on Linux only).
+ * Not a unit test, run it after mvn test-compile with:
+ * java -cp target/classes:target/test-classes bguspl.set.ex.PlayerInputQueueBenchmark
+ */
+public class PlayerInputQueueBenchmark {
+
+    private static final int CAPACITY = 3;
+    private static final int BURST_KEYS = 1_000_000;
+    private static final int PACED_KEYS = 20_000;
+    private static final int ROUNDS = 5;
+
+    /**
+     * The operations of a queue under test.
+     */
+    private interface KeyQueue {
+        void put(int slot);
+
+        int take();
+    }
+
+    /**
+     * The queue PlayerInputQueue replaced: a Vector behind synchronized put/take with wait/notifyAll.
+     */
+    private static class VectorQueue implements KeyQueue {
+        private final Vector<Integer> vector = new Vector<>();
+
+        @Override
+        public synchronized void put(int slot) {
+            while (vector.size() >= CAPACITY) {
+                try {
+                    wait();
+                } catch (InterruptedException ignored) {}
+            }
+            vector.add(slot);
+            notifyAll();
+        }
+
+        @Override
+        public synchronized int take() {
+            while (vector.size() == 0) {
+                try {
+                    wait();
+                } catch (InterruptedException ignored) {}
+            }
+            Integer slot = vector.get(0);
+            vector.remove(0);
+            notifyAll();
+            return slot;
+        }
+    }
+
+    private static KeyQueue ring() {
+        PlayerInputQueue queue = new PlayerInputQueue(CAPACITY);
+        return new KeyQueue() {
+            @Override
+            public void put(int slot) {
+                queue.put(slot);
+            }
+
+            @Override
+            public int take() {
+                return queue.take();
+            }
+        };
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("cores: " + Runtime.getRuntime().availableProcessors());
+        for (int round = 0; round < ROUNDS; ++round) {
+            boolean print = round == ROUNDS - 1; // the earlier rounds are a warmup
+            run("vector", new VectorQueue(), print);
+            run("ring  ", ring(), print);
+        }
+    }
+
+    private static void run(String name, KeyQueue queue, boolean print) throws InterruptedException {
+        AtomicLong switches = new AtomicLong();
+
+        // burst: the keys are pressed as fast as they are taken
+        long start = System.nanoTime();
+        Thread consumer = new Thread(() -> {
+            long before = contextSwitches();
+            for (int i = 0; i < BURST_KEYS; ++i)
+                queue.take();
+            switches.addAndGet(contextSwitches() - before);
+        });
+        consumer.start();
+        long before = contextSwitches();
+        for (int i = 0; i < BURST_KEYS; ++i)
+            queue.put(i);
+        switches.addAndGet(contextSwitches() - before);
+        consumer.join();
+        double burstMillis = (System.nanoTime() - start) / 1e6;
+        double burstSwitches = (double) switches.getAndSet(0) / BURST_KEYS;
+
+        // paced: every key is pressed after the previous one was taken
+        long[] pressed = new long[PACED_KEYS];
+        long[] latencies = new long[PACED_KEYS];
+        AtomicLong taken = new AtomicLong();
+        consumer = new Thread(() -> {
+            long consumerBefore = contextSwitches();
+            for (int i = 0; i < PACED_KEYS; ++i) {
+                int slot = queue.take();
+                latencies[slot] = System.nanoTime() - pressed[slot];
+                taken.lazySet(i + 1);
+            }
+            switches.addAndGet(contextSwitches() - consumerBefore);
+        });
+        consumer.start();
+        before = contextSwitches();
+        for (int i = 0; i < PACED_KEYS; ++i) {
+            pressed[i] = System.nanoTime();
+            queue.put(i);
+            while (taken.get() <= i) Thread.yield();
+        }
+        switches.addAndGet(contextSwitches() - before);
+        consumer.join();
+        Arrays.sort(latencies);
+
+        if (print)
+            System.out.printf("%s burst: %.1f ms (%.0f keys/ms, %.3f switches/key), paced latency: p50 %d us, p99 %d us (%.2f switches/key)%n",
+                    name, burstMillis, BURST_KEYS / burstMillis, burstSwitches,
+                    latencies[PACED_KEYS / 2] / 1000, latencies[PACED_KEYS * 99 / 100] / 1000,
+                    (double) switches.get() / PACED_KEYS);
+    }
+
+    /**
+     * Returns the number of context switches of the current thread so far (0 where /proc is not available).
+     */
+    private static long contextSwitches() {
+        try {
+            long switches = 0;
+            for (String line : Files.readAllLines(Paths.get("/proc/thread-self/status")))
+                if (line.contains("ctxt_switches")) switches += Long.parseLong(line.replaceAll("\\D", ""));
+            return switches;
+        } catch (IOException | RuntimeException e) {
+            return 0;
+        }
+    }
+}
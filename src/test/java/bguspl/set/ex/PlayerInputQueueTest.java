@@ -0,0 +1,54 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config.KeyOverflowPolicy;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PlayerInputQueueTest {
+
+    private static PlayerInputQueue fullQueue(KeyOverflowPolicy policy) {
+        PlayerInputQueue queue = new PlayerInputQueue(3);
+        for (int slot = 0; slot < 3; ++slot)
+            assertTrue(queue.offer(slot, policy));
+        return queue;
+    }
+
+    @Test
+    void offer_DropNewest() {
+        PlayerInputQueue queue = fullQueue(KeyOverflowPolicy.DROP_NEWEST);
+
+        assertFalse(queue.offer(7, KeyOverflowPolicy.DROP_NEWEST));
+        assertEquals(0, queue.take());
+        assertEquals(1, queue.take());
+        assertEquals(2, queue.take());
+    }
+
+    @Test
+    void offer_DropOldest() {
+        PlayerInputQueue queue = fullQueue(KeyOverflowPolicy.DROP_OLDEST);
+
+        assertTrue(queue.offer(7, KeyOverflowPolicy.DROP_OLDEST));
+        assertEquals(3, queue.size());
+        assertEquals(1, queue.take());
+        assertEquals(2, queue.take());
+        assertEquals(7, queue.take());
+    }
+
+    @Test
+    void offer_ToggleCancel() {
+        PlayerInputQueue queue = fullQueue(KeyOverflowPolicy.TOGGLE_CANCEL);
+
+        // a repeated press cancels the waiting one, so an odd number of presses leaves a single press of the slot
+        assertTrue(queue.offer(1, KeyOverflowPolicy.TOGGLE_CANCEL));
+        for (int i = 0; i < 3; ++i)
+            assertTrue(queue.offer(5, KeyOverflowPolicy.TOGGLE_CANCEL));
+        assertEquals(3, queue.size());
+        assertEquals(0, queue.take());
+        assertEquals(2, queue.take());
+        assertEquals(5, queue.take());
+        assertEquals(0, queue.size());
+    }
+}
@@ -4,18 +4,25 @@ import bguspl.set.Config;
 import bguspl.set.Env;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
+import bguspl.set.UtilImpl;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.Properties;
 import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -70,4 +77,35 @@ class PlayerTest {
         // check that ui.setScore was called with the player's id and the correct score
         verify(ui).setScore(eq(player.id), eq(expectedScore));
     }
+
+    @Test
+    void computerPlayer_SubmitsItsSetWithoutCancellingItsTokens() {
+
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "1");
+        properties.put("ComputerSkill", "1");
+        properties.put("TableDelaySeconds", "0");
+        Config config = new Config(logger, properties);
+        Util util = new UtilImpl(config);
+        Env env = new Env(logger, config, ui, util);
+        Table table = new Table(env);
+        for (int slot = 0; slot < config.tableSize; ++slot)
+            table.placeCard(slot, slot);
+        table.analyze();
+        Player computer = new Player(env, dealer, table, 0, false);
+
+        // the player thread starts the AI thread, which presses keys with no reaction delay
+        new Thread(computer).start();
+        ArgumentCaptor<int[]> slots = ArgumentCaptor.forClass(int[].class);
+        verify(dealer, timeout(5000)).addSetToCheck(eq(0), slots.capture(), any());
+        computer.terminate();
+
+        // the set is legal, and the AI never pressed a slot it had already placed a token on
+        int[] cards = new int[config.featureSize];
+        for (int i = 0; i < cards.length; ++i)
+            cards[i] = table.cardAt(slots.getValue()[i]);
+        assertTrue(util.testSet(cards));
+        verify(ui, never()).removeToken(anyInt(), anyInt());
+    }
 }
\ No newline at end of file
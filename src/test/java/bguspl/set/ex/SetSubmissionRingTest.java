@@ -0,0 +1,64 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SetSubmissionRingTest {
+
+    @Test
+    void offer_FailsWhenFull() {
+        SetSubmissionRing ring = new SetSubmissionRing(2, 3);
+        int[] slots = {0, 1, 2};
+        long[] cells = {1L << 32 | 5, 2L << 32 | 6, 7};
+
+        assertTrue(ring.offer(0, 10, slots, cells));
+        assertTrue(ring.offer(1, 11, slots, cells));
+        assertFalse(ring.offer(2, 12, slots, cells));
+
+        PlayerSet set = new PlayerSet(3);
+        assertTrue(ring.poll(set));
+        assertEquals(0, set.getPlayerId());
+        assertEquals(10, set.getSubmitted());
+        assertEquals(5, set.getSetCards()[0]);
+        assertEquals(1, set.getSetVersions()[0]);
+        assertEquals(2, set.getSetSlots()[2]);
+        assertTrue(ring.offer(2, 12, slots, cells));
+    }
+
+    @Test
+    void poll_KeepsTheOrderOfEveryProducer() throws InterruptedException {
+        int producers = 4;
+        int submissions = 10_000;
+        SetSubmissionRing ring = new SetSubmissionRing(producers, 3);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; ++p) {
+            int player = p;
+            threads[p] = new Thread(() -> {
+                int[] slots = new int[3];
+                long[] cells = new long[3];
+                for (int i = 0; i < submissions; ++i) {
+                    slots[0] = i;
+                    while (!ring.offer(player, i, slots, cells)) Thread.yield();
+                }
+            });
+            threads[p].start();
+        }
+
+        int[] next = new int[producers];
+        PlayerSet set = new PlayerSet(3);
+        for (int taken = 0; taken < producers * submissions; ) {
+            if (!ring.poll(set)) {
+                Thread.yield();
+                continue;
+            }
+            assertEquals(next[set.getPlayerId()]++, set.getSetSlots()[0]);
+            ++taken;
+        }
+        for (Thread thread : threads)
+            thread.join();
+        assertTrue(ring.isEmpty());
+    }
+}
@@ -4,18 +4,24 @@ import bguspl.set.Config;
 import bguspl.set.Env;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
+import bguspl.set.UtilImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.util.List;
 import java.util.Properties;
+import java.util.Random;
 import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class TableTest {
 
     Table table;
+    private Env env;
     private Integer[] slotToCard;
     private Integer[] cardToSlot;
 
@@ -35,7 +41,7 @@ class TableTest {
         slotToCard = new Integer[config.tableSize];
         cardToSlot = new Integer[config.deckSize];
 
-        Env env = new Env(logger, config, new MockUserInterface(), new MockUtil());
+        env = new Env(logger, config, new MockUserInterface(), new MockUtil());
         table = new Table(env, slotToCard, cardToSlot);
     }
 
@@ -95,6 +101,94 @@ class TableTest {
         placeSomeCardsAndAssert();
     }
 
+    @Test
+    void tokens_PlacedAndRemovedPerPlayer() {
+
+        // the slot cells are read from the arrays on construction
+        fillAllSlots();
+        table = new Table(env, slotToCard, cardToSlot);
+        assertTrue(table.placeToken(0, 1));
+        assertTrue(table.placeToken(0, 3));
+        assertTrue(table.placeToken(1, 3));
+        assertFalse(table.placeToken(1, 3));
+
+        int[] slots = new int[3];
+        assertEquals(2, table.tokenSlots(0, slots));
+        assertEquals(1, slots[0]);
+        assertEquals(3, slots[1]);
+
+        table.removeTokens(new int[]{3});
+        assertEquals(1, table.tokenCount(0));
+        assertEquals(0, table.tokenCount(1));
+        assertTrue(table.removeToken(0, 1));
+        assertFalse(table.hasToken(0, 1));
+    }
+
+    @Test
+    void slotCell_ChangesWhenTheSameCardIsPlacedAgain() {
+
+        table.placeCard(8, 2);
+        long cell = table.slotCell(2);
+        assertEquals(8, Table.cellCard(cell));
+
+        table.removeCard(2);
+        assertEquals(-1, table.cardAt(2));
+        table.placeCard(8, 2);
+        assertEquals(8, table.cardAt(2));
+        assertNotEquals(Table.cellVersion(cell), Table.cellVersion(table.slotCell(2)));
+    }
+
+    @Test
+    void analyze_PublishesTheSetsOnTheTable() {
+
+        Properties properties = new Properties();
+        properties.put("TableDelaySeconds", "0");
+        MockLogger logger = new MockLogger();
+        Config config = new Config(logger, properties);
+        Util util = new UtilImpl(config);
+        Table table = new Table(new Env(logger, config, new MockUserInterface(), util));
+        for (int slot = 0; slot < config.tableSize; ++slot)
+            table.placeCard(slot * 5, slot);
+
+        TableAnalysis before = table.analysis();
+        table.analyze();
+        TableAnalysis analysis = table.analysis();
+        assertTrue(analysis.version > before.version);
+        assertEquals(table.setCount(), analysis.setCount());
+        int[] cards = new int[config.featureSize];
+        for (int set = 0; set < analysis.setCount(); ++set) {
+            for (int i = 0; i < cards.length; ++i)
+                cards[i] = table.cardAt(analysis.slot(set, i));
+            assertTrue(util.testSet(cards));
+        }
+    }
+
+    @Test
+    void setCount_FollowsPlacedAndRemovedCards() {
+
+        Properties properties = new Properties();
+        properties.put("Rows", "3");
+        properties.put("Columns", "4");
+        properties.put("TableDelaySeconds", "0");
+        MockLogger logger = new MockLogger();
+        Config config = new Config(logger, properties);
+        Util util = new UtilImpl(config);
+        Table table = new Table(new Env(logger, config, new MockUserInterface(), util));
+
+        Random random = new Random(17);
+        int[] cards = new int[config.tableSize];
+        for (int round = 0; round < 200; ++round) {
+            int slot = random.nextInt(config.tableSize);
+            if (table.slotToCard[slot] != -1) table.removeCard(slot);
+            else {
+                int card = random.nextInt(config.deckSize);
+                if (table.cardToSlot[card] == -1) table.placeCard(card, slot);
+            }
+            int length = table.cardsOnTable(cards);
+            assertEquals(util.findSets(cards, length, set -> true), table.setCount());
+        }
+    }
+
     static class MockUserInterface implements UserInterface {
         @Override
         public void dispose() {}
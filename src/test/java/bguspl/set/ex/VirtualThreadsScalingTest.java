@@ -0,0 +1,62 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.PackedUtilImpl;
+import bguspl.set.ThreadLogger;
+import bguspl.set.Util;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs a game of 10,000 computer players on one table, on virtual threads (a player thread and an AI thread for each
+ * player). Skipped on JDKs without virtual threads.
+ */
+class VirtualThreadsScalingTest {
+
+    private static final int PLAYERS = 10_000;
+    private static final long GAME_TIMEOUT_MILLIS = 120_000;
+
+    @Test
+    void tenThousandComputerPlayers_PlayOnVirtualThreads() throws InterruptedException {
+        assumeTrue(ThreadLogger.virtualThreadsAvailable());
+
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", Integer.toString(PLAYERS));
+        properties.put("VirtualThreads", "True");
+        properties.put("ComputerSkill", "0.5");
+        properties.put("ComputerReactionSeconds", "0.05");
+        properties.put("PointFreezeSeconds", "0");
+        properties.put("PenaltyFreezeSeconds", "1");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("TurnTimeoutSeconds", "10");
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+        Util util = new PackedUtilImpl(config);
+        Env env = new Env(logger, config, new TableTest.MockUserInterface(), util);
+
+        Table table = new Table(env);
+        Player[] players = new Player[config.players];
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, false);
+
+        Thread dealerThread = env.threadFactory.newThread(dealer);
+        dealerThread.start();
+        dealerThread.join(GAME_TIMEOUT_MILLIS);
+        if (dealerThread.isAlive()) dealer.terminate();
+        dealerThread.join(GAME_TIMEOUT_MILLIS);
+
+        assertFalse(dealerThread.isAlive());
+        int points = 0;
+        for (Player player : players)
+            points += player.score();
+        assertTrue(points > 0);
+    }
+}